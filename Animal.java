@@ -0,0 +1,92 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A patient. Plain Java with no FX state, so animals can be created and
+ * processed on any thread; the UI observes them through {@link FxModel}.
+ * IDs come from one process-wide counter that stays above every ID seen, so
+ * animals loaded with stored IDs and new ones never collide. Setters report
+ * the change to the listener given to {@link #onChange}, which is how the UI
+ * learns about edits without the model depending on it.
+ */
+public abstract class Animal implements Serviceable {
+    private static final AtomicLong NEXT_ID = new AtomicLong(1);
+    private static volatile Consumer<Animal> changeListener = animal -> {};
+
+    private final long id;
+    private String name;
+    private int age;
+    private volatile Owner owner;
+    private volatile String details;
+
+    /** Reserves the next free animal ID. */
+    public static long nextId() {
+        return NEXT_ID.getAndIncrement();
+    }
+
+    /** Sets the listener the setters call, on the thread that ran the setter. */
+    public static void onChange(Consumer<Animal> listener) {
+        changeListener = listener;
+    }
+
+    public Animal(String name, int age) {
+        this(nextId(), name, age);
+    }
+
+    public Animal(long id, String name, int age) {
+        this.id = id;
+        this.name = name;
+        this.age = age;
+        NEXT_ID.accumulateAndGet(id + 1, Math::max);
+    }
+
+    public long getId() { return id; }
+    public String getName() { return name; }
+    public int getAge() { return age; }
+    public Owner getOwner() { return owner; }
+
+    public void setName(String name) { this.name = name; detailsChanged(); }
+    public void setAge(int age) { this.age = age; detailsChanged(); }
+
+    /** Kept in step with the owner's pet list by {@link Owner}. */
+    void setOwner(Owner owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * The details text shown in the tables. It is built on first use and
+     * kept until a setter changes the animal, so rendering a row does not
+     * format anything.
+     */
+    @Override
+    public final String toString() {
+        String text = details;
+        if (text == null) {
+            text = describe();
+            details = text;
+        }
+        return text;
+    }
+
+    /** Builds the text {@link #toString()} returns; subclasses append their own fields. */
+    protected String describe() {
+        return "Type: " + getType() + ", Name: " + getName() + ", Age: " + getAge();
+    }
+
+    /**
+     * Drops the cached details text and tells the change listener; call from
+     * every setter of a described field.
+     */
+    protected void detailsChanged() {
+        details = null;
+        changeListener.accept(this);
+    }
+
+    /** "Dog", "Cat" or "Bird"; fixed by the subclass rather than stored per animal. */
+    public abstract String getType();
+
+    /** The price of a standard visit, from {@link Pricing}. */
+    public String getPrice() {
+        return Pricing.label(Pricing.current().quote(this, Pricing.STANDARD_SERVICE));
+    }
+}
@@ -0,0 +1,446 @@
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Timings of the paths that grow with the data: loading and saving the
+ * snapshot, the owner and animal lookups, deleting owners with their pets,
+ * and the text of the Owner and Details columns. Each benchmark runs on synthetic data
+ * at every size, with warm-up iterations first, and prints one JSON object
+ * per line so results can be appended to a file and compared over time.
+ *
+ * <p>Every benchmark and size runs in fresh JVMs (--forks, 2 by default),
+ * started with this JVM's options and class path, so JIT profiles and heap
+ * left by one benchmark cannot skew the next; --forks 0 runs everything in
+ * this JVM. Results pass through {@link #consume(long)} so the JIT cannot
+ * drop the work that produced them.
+ *
+ * <pre>
+ * java -Xmx2g Benchmarks [--sizes 1000,100000,1000000] [--only load,save,...]
+ *                        [--warmup 2] [--iterations 5] [--forks 2] [--out results.jsonl]
+ * </pre>
+ *
+ * The load and save benchmarks write the data files into the working
+ * directory, so run it from an empty one. JavaFX must be on the module path
+ * as for the application, but like {@link BulkImport} this is a separate
+ * class so the FX toolkit is not started.
+ */
+public class Benchmarks {
+    private static final int LOOKUPS = 100_000;
+    private static final String[] NAMES = new String[2000];
+
+    static {
+        for (int i = 0; i < NAMES.length; i++) {
+            NAMES[i] = "Pet" + Integer.toString(i * 7919, 36);
+        }
+    }
+
+    /** One timed iteration; returns the number of operations it performed. */
+    @FunctionalInterface
+    private interface Iteration {
+        long run() throws Exception;
+    }
+
+    /** Prepares an iteration for the given size; the preparation is not timed. */
+    @FunctionalInterface
+    private interface Benchmark {
+        Iteration prepare(int size) throws Exception;
+    }
+
+    private static final Map<String, Benchmark> BENCHMARKS = new LinkedHashMap<>();
+
+    static {
+        BENCHMARKS.put("load", Benchmarks::load);
+        BENCHMARKS.put("save", Benchmarks::save);
+        BENCHMARKS.put("findOwnerByPet", Benchmarks::findOwnerByPet);
+        BENCHMARKS.put("ownerColumn", Benchmarks::ownerColumn);
+        BENCHMARKS.put("ownerById", Benchmarks::ownerById);
+        BENCHMARKS.put("animalById", Benchmarks::animalById);
+        BENCHMARKS.put("findOwnerByName", Benchmarks::findOwnerByName);
+        BENCHMARKS.put("findAnimalByName", Benchmarks::findAnimalByName);
+        BENCHMARKS.put("deleteOwners", Benchmarks::deleteOwners);
+        BENCHMARKS.put("details", Benchmarks::details);
+    }
+
+    /** Written once per iteration; a volatile write the JIT must keep, like JMH's Blackhole. */
+    private static volatile long sink;
+
+    private static void consume(long result) {
+        sink = result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {1_000, 100_000, 1_000_000};
+        Set<String> only = BENCHMARKS.keySet();
+        int warmup = 2;
+        int iterations = 5;
+        int forks = 2;
+        File out = null;
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 == args.length) {
+                usage();
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--sizes" -> sizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                case "--only" -> only = new LinkedHashSet<>(Arrays.asList(value.split(",")));
+                case "--warmup" -> warmup = Integer.parseInt(value);
+                case "--iterations" -> iterations = Math.max(1, Integer.parseInt(value));
+                case "--forks" -> forks = Math.max(0, Integer.parseInt(value));
+                case "--out" -> out = new File(value);
+                default -> usage();
+            }
+        }
+        for (String name : only) {
+            if (!BENCHMARKS.containsKey(name)) {
+                System.err.println("Unknown benchmark " + name + "; known: " + String.join(",", BENCHMARKS.keySet()));
+                System.exit(2);
+            }
+        }
+        if ((only.contains("load") || only.contains("save")) && hasDataFiles()) {
+            System.err.println("The working directory already holds data files; run the benchmarks from an empty one.");
+            System.exit(2);
+        }
+
+        try (PrintWriter results = out == null ? null : new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(out, true), StandardCharsets.UTF_8), true)) {
+            for (String name : only) {
+                for (int size : sizes) {
+                    List<String> lines = forks == 0
+                            ? List.of(measure(name, BENCHMARKS.get(name), size, warmup, iterations))
+                            : fork(name, size, warmup, iterations, forks);
+                    for (String line : lines) {
+                        System.out.println(line);
+                        if (results != null) {
+                            results.println(line);
+                        }
+                    }
+                }
+            }
+        } finally {
+            deleteDataFiles();
+        }
+    }
+
+    /** Runs one benchmark and size in {@code forks} fresh JVMs, one after another, and returns their lines. */
+    private static List<String> fork(String name, int size, int warmup, int iterations, int forks)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), Benchmarks.class.getName(),
+                "--only", name, "--sizes", String.valueOf(size), "--warmup", String.valueOf(warmup),
+                "--iterations", String.valueOf(iterations), "--forks", "0"));
+        List<String> lines = new ArrayList<>();
+        for (int fork = 0; fork < forks; fork++) {
+            Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                    StandardCharsets.UTF_8))) {
+                for (String line; (line = output.readLine()) != null; ) {
+                    lines.add(line.replace("{\"benchmark\"", "{\"fork\":" + fork + ",\"benchmark\""));
+                }
+            }
+            if (process.waitFor() != 0) {
+                throw new IllegalStateException(name + " at " + size + " records failed in fork " + fork);
+            }
+        }
+        return lines;
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java Benchmarks [--sizes 1000,100000,1000000] [--only "
+                + String.join(",", BENCHMARKS.keySet()) + "] [--warmup n] [--iterations n] [--forks n]"
+                + " [--out file]");
+        System.exit(2);
+    }
+
+    private static String measure(String name, Benchmark benchmark, int size, int warmup, int iterations)
+            throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            benchmark.prepare(size).run();
+        }
+        double[] nanosPerOp = new double[iterations];
+        long ops = 0;
+        for (int i = 0; i < iterations; i++) {
+            Iteration iteration = benchmark.prepare(size);
+            long started = System.nanoTime();
+            ops = iteration.run();
+            nanosPerOp[i] = (double) (System.nanoTime() - started) / ops;
+        }
+        Arrays.sort(nanosPerOp);
+        double mean = Arrays.stream(nanosPerOp).average().orElse(0);
+        return String.format(Locale.ROOT, "{\"benchmark\":\"%s\",\"records\":%d,\"opsPerIteration\":%d,"
+                        + "\"iterations\":%d,\"meanNsPerOp\":%.1f,\"minNsPerOp\":%.1f,\"medianNsPerOp\":%.1f,"
+                        + "\"maxNsPerOp\":%.1f,\"java\":\"%s\",\"cpus\":%d,\"time\":\"%s\"}",
+                name, size, ops, iterations, mean, nanosPerOp[0], nanosPerOp[iterations / 2],
+                nanosPerOp[iterations - 1], System.getProperty("java.version"),
+                Runtime.getRuntime().availableProcessors(), Instant.now());
+    }
+
+    /**
+     * {@code size} animals, a third of them without an owner and the rest
+     * two to an owner, with pet names that repeat as they do in practice.
+     */
+    static JavaApplication.LoadedData generate(int size) {
+        JavaApplication.LoadedData data = new JavaApplication.LoadedData(new ArrayList<>(), new ArrayList<>());
+        Random random = new Random(size);
+        Owner owner = null;
+        for (int i = 0; i < size; i++) {
+            String name = NAMES[random.nextInt(NAMES.length)];
+            Animal animal = switch (i % 3) {
+                case 0 -> new Dog(i + 1, name, random.nextInt(20), "Mixed");
+                case 1 -> new Cat(i + 1, name, random.nextInt(20), random.nextBoolean());
+                default -> new Bird(i + 1, name, random.nextInt(20), random.nextBoolean());
+            };
+            data.addAnimal(animal);
+            if (i % 3 == 0) {
+                owner = new Owner("Owner " + i, "O" + i, "555-" + (1000 + i % 9000));
+                data.addOwner(owner);
+            }
+            if (i % 3 != 2) {
+                owner.addPet(animal);
+            }
+        }
+        return data;
+    }
+
+    private static Iteration load(int size) throws Exception {
+        new JavaApplication().saveBatch(generate(size));
+        return () -> {
+            JavaApplication app = new JavaApplication();
+            List<String> problems = new ArrayList<>();
+            JavaApplication.LoadedData loaded;
+            try {
+                loaded = app.loadBatch(problems);
+            } finally {
+                app.closeBatch();
+            }
+            if (loaded.animals.size() != size || !problems.isEmpty()) {
+                throw new IllegalStateException("Loaded " + loaded.animals.size() + " animals, problems " + problems);
+            }
+            return size;
+        };
+    }
+
+    private static Iteration save(int size) {
+        JavaApplication.LoadedData data = generate(size);
+        return () -> {
+            new JavaApplication().saveBatch(data);
+            return size;
+        };
+    }
+
+    /** Finds random animals in the store, as the scheduler and invoicing do, and reads their owner. */
+    private static Iteration findOwnerByPet(int size) {
+        JavaApplication.LoadedData data = generate(size);
+        ModelStore store = loadedStore(data);
+        long[] ids = ids(data.animals, Animal::getId);
+        return () -> {
+            int found = 0;
+            for (long id : ids) {
+                if (store.animalById(id).getOwner() != null) {
+                    found++;
+                }
+            }
+            consume(found);
+            return ids.length;
+        };
+    }
+
+    /**
+     * Fills the Owner cell of random rows through a fresh {@link FxModel}, as
+     * the Animals table does when rows scroll into view. Each cell resolves
+     * the pet's owner through its back-reference, so the time per cell should
+     * stay flat as the roster grows.
+     */
+    private static Iteration ownerColumn(int size) {
+        List<Animal> animals = generate(size).animals;
+        int[] rows = picks(animals.size());
+        FxModel fxModel = new FxModel();
+        return () -> {
+            long length = 0;
+            for (int row : rows) {
+                length += fxModel.ownerName(animals.get(row)).getValue().length();
+            }
+            consume(length);
+            return rows.length;
+        };
+    }
+
+    private static Iteration ownerById(int size) {
+        JavaApplication.LoadedData data = generate(size);
+        ModelStore store = loadedStore(data);
+        String[] ids = keys(data.owners, Owner::getId);
+        return () -> {
+            int found = 0;
+            for (String id : ids) {
+                if (store.ownerById(id) != null) {
+                    found++;
+                }
+            }
+            consume(found);
+            return ids.length;
+        };
+    }
+
+    private static Iteration animalById(int size) {
+        JavaApplication.LoadedData data = generate(size);
+        ModelStore store = loadedStore(data);
+        long[] ids = ids(data.animals, Animal::getId);
+        return () -> {
+            int found = 0;
+            for (long id : ids) {
+                if (store.animalById(id) != null) {
+                    found++;
+                }
+            }
+            consume(found);
+            return ids.length;
+        };
+    }
+
+    /** Owners are found by name through the search index behind the Owners tab's search box. */
+    private static Iteration findOwnerByName(int size) {
+        List<Owner> owners = generate(size).owners;
+        return searches(owners, JavaApplication::searchText, Owner::getName);
+    }
+
+    /** Animals are found by name through the search index behind the Animals tab's search box. */
+    private static Iteration findAnimalByName(int size) {
+        List<Animal> animals = generate(size).animals;
+        return searches(animals, JavaApplication::searchText, Animal::getName);
+    }
+
+    /**
+     * Indexes the items with the text the application's search box uses, then
+     * times name queries; each query runs a thousandth as often as an ID
+     * lookup, since a search returns every match rather than one item.
+     */
+    private static <T> Iteration searches(List<T> items, Function<T, String> text, Function<T, String> name) {
+        SearchIndex<T> index = new SearchIndex<>();
+        for (T item : items) {
+            index.put(item, text.apply(item));
+        }
+        String[] queries = Arrays.copyOf(keys(items, name), LOOKUPS / 1000);
+        return () -> {
+            long found = 0;
+            for (String query : queries) {
+                found += index.search(query).size();
+            }
+            consume(found);
+            return queries.length;
+        };
+    }
+
+    /** A store holding the data, with edits and notifications discarded. */
+    private static ModelStore loadedStore(JavaApplication.LoadedData data) {
+        ModelStore store = new ModelStore(change -> {}, task -> {}, batch -> {});
+        store.load(data.owners, data.animals);
+        return store;
+    }
+
+    /** Keys of randomly picked items, copied so lookups cannot succeed on identity alone. */
+    private static <T> String[] keys(List<T> items, Function<T, String> key) {
+        int[] picks = picks(items.size());
+        String[] keys = new String[picks.length];
+        for (int i = 0; i < picks.length; i++) {
+            keys[i] = new String(key.apply(items.get(picks[i])).toCharArray());
+        }
+        return keys;
+    }
+
+    private static <T> long[] ids(List<T> items, Function<T, Long> id) {
+        int[] picks = picks(items.size());
+        long[] ids = new long[picks.length];
+        for (int i = 0; i < picks.length; i++) {
+            ids[i] = id.apply(items.get(picks[i]));
+        }
+        return ids;
+    }
+
+    /**
+     * Deletes one owner in a hundred with their pets through the store, and
+     * mirrors the removals into observable lists as the UI does. The store's
+     * notifications are queued and run afterwards, as they would be by
+     * Platform.runLater.
+     */
+    private static Iteration deleteOwners(int size) {
+        JavaApplication.LoadedData data = generate(size);
+        ObservableList<Owner> owners = FXCollections.observableArrayList(data.owners);
+        ObservableList<Animal> animals = FXCollections.observableArrayList(data.animals);
+        Queue<Runnable> fxQueue = new ArrayDeque<>();
+        ModelStore store = new ModelStore(change -> {}, fxQueue::add, batch -> {
+            Set<Owner> removedOwners = Collections.newSetFromMap(new IdentityHashMap<>());
+            Set<Animal> removedAnimals = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (ModelStore.Change change : batch) {
+                if (change instanceof ModelStore.OwnerRemoved removed) {
+                    removedOwners.add(removed.owner());
+                    removedAnimals.addAll(removed.pets());
+                }
+            }
+            animals.removeAll(removedAnimals);
+            owners.removeAll(removedOwners);
+        });
+        store.load(data.owners, data.animals);
+        fxQueue.clear();
+        List<Owner> selected = new ArrayList<>();
+        for (int i = 0; i < data.owners.size(); i += 100) {
+            selected.add(data.owners.get(i));
+        }
+        return () -> {
+            store.removeOwners(selected);
+            for (Runnable task; (task = fxQueue.poll()) != null; ) {
+                task.run();
+            }
+            consume(animals.size());
+            return selected.size();
+        };
+    }
+
+    private static Iteration details(int size) {
+        List<Animal> animals = generate(size).animals;
+        return () -> {
+            long length = 0;
+            for (Animal animal : animals) {
+                length += animal.toString().length();
+            }
+            consume(length);
+            return animals.size();
+        };
+    }
+
+    /** Random indexes below {@code count}, the same for every iteration. */
+    private static int[] picks(int count) {
+        Random random = new Random(count);
+        int[] picks = new int[LOOKUPS];
+        for (int i = 0; i < picks.length; i++) {
+            picks[i] = random.nextInt(count);
+        }
+        return picks;
+    }
+
+    private static final String[] DATA_FILES = {"owners.txt", "animals.txt", "relations.txt", "data.bin",
+            "snapshot.gen"};
+
+    private static boolean hasDataFiles() {
+        for (String name : DATA_FILES) {
+            if (new File(name).exists()) {
+                return true;
+            }
+        }
+        File[] journal = new File(".").listFiles((dir, name) -> name.startsWith("journal."));
+        return journal != null && journal.length > 0;
+    }
+
+    private static void deleteDataFiles() {
+        for (String name : DATA_FILES) {
+            new File(name).delete();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Primitives of the binary snapshot format: a magic and version header,
+ * LEB128 varints (zig-zag for signed values) and length-prefixed UTF-8
+ * strings. Reading works over a {@link ByteBuffer}, typically a mapped file.
+ */
+public final class BinaryFormat {
+    private static final byte[] MAGIC = {'V', 'E', 'T', 'S'};
+
+    private BinaryFormat() {}
+
+    public static class Writer implements Closeable {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[64 * 1024];
+        private int position;
+
+        public Writer(OutputStream out) {
+            this.out = out;
+        }
+
+        public void writeHeader(int version) throws IOException {
+            for (byte b : MAGIC) {
+                writeByte(b);
+            }
+            writeVarint(version);
+        }
+
+        public void writeByte(int value) throws IOException {
+            if (position == buffer.length) {
+                flushBuffer();
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        public void writeBoolean(boolean value) throws IOException {
+            writeByte(value ? 1 : 0);
+        }
+
+        public void writeVarint(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        public void writeSignedVarint(long value) throws IOException {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        /** Length + 1 as a varint followed by UTF-8 bytes; a length of 0 encodes null. */
+        public void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1L);
+            if (bytes.length > buffer.length - position) {
+                flushBuffer();
+                if (bytes.length > buffer.length) {
+                    out.write(bytes);
+                    return;
+                }
+            }
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private void flushBuffer() throws IOException {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+
+        public void flush() throws IOException {
+            flushBuffer();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            out.close();
+        }
+    }
+
+    public static class Reader {
+        private final ByteBuffer in;
+        private byte[] scratch = new byte[256];
+
+        public Reader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        /** Checks the magic and returns the format version. */
+        public int readHeader() throws IOException {
+            for (byte expected : MAGIC) {
+                if (in.remaining() == 0 || in.get() != expected) {
+                    throw new IOException("Not a snapshot file");
+                }
+            }
+            return (int) readVarint();
+        }
+
+        public int readByte() throws IOException {
+            try {
+                return in.get() & 0xFF;
+            } catch (BufferUnderflowException e) {
+                throw new EOFException("Snapshot is truncated");
+            }
+        }
+
+        public boolean readBoolean() throws IOException {
+            return readByte() != 0;
+        }
+
+        public long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint at offset " + in.position());
+        }
+
+        public long readSignedVarint() throws IOException {
+            long raw = readVarint();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        /** Reads a count that must fit in an int, as used for list sizes and references. */
+        public int readCount() throws IOException {
+            long value = readVarint();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IOException("Count out of range at offset " + in.position());
+            }
+            return (int) value;
+        }
+
+        public String readString() throws IOException {
+            long prefix = readVarint();
+            if (prefix == 0) {
+                return null;
+            }
+            int length = (int) (prefix - 1);
+            if (length < 0 || length > in.remaining()) {
+                throw new EOFException("Snapshot is truncated");
+            }
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            in.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
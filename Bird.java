@@ -0,0 +1,31 @@
+public class Bird extends Animal {
+    private boolean canFly;
+
+    public Bird(String name, int age, boolean canFly) {
+        super(name, age);
+        this.canFly = canFly;
+    }
+
+    public Bird(long id, String name, int age, boolean canFly) {
+        super(id, name, age);
+        this.canFly = canFly;
+    }
+
+    @Override
+    public String provideService(String type) {
+        return type + " for " + (canFly ? "flying" : "non-flying") + " bird";
+    }
+
+    @Override
+    public String getType() {
+        return "Bird";
+    }
+
+    @Override
+    protected String describe() {
+        return super.describe() + ", Can fly: " + canFly + ", " + getPrice();
+    }
+
+    public boolean isCanFly() { return canFly; }
+    public void setCanFly(boolean canFly) { this.canFly = canFly; detailsChanged(); }
+}
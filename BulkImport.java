@@ -0,0 +1,296 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Headless batch import of partner clinic registrations into the data files,
+ * for nightly jobs that have no display. Like {@link SnapshotConverter} it is
+ * a separate class so the java launcher does not start the FX toolkit.
+ *
+ * <pre>
+ * java BulkImport [--owners owners.csv] [--animals animals.csv] [--threads n]
+ * </pre>
+ *
+ * Owner rows are "name,id,phone", as in owners.txt. Animal rows are
+ * "ownerId,Type,name,age,detail"; the owner ID may be empty and otherwise
+ * links the pet to an owner already stored or imported. Owners are
+ * deduplicated by ID, and the first row wins. An animal is skipped only
+ * when its whole row repeats one already stored or imported; partner rows
+ * carry no animal ID, so a pet that only shares its owner, type and name
+ * with another, as two pets called Max might, is imported and reported as
+ * a possible duplicate for someone to check. The files are read as blocks of whole records that are parsed on
+ * several threads and merged back in file order, with only a few blocks in
+ * memory at a time. The application must not be running during the import.
+ */
+public class BulkImport {
+    static final int BLOCK_CHARS = 1 << 20;
+    private static final int MAX_REPORTED_PROBLEMS = 20;
+
+    /** Parsed contents of one block, merged on the main thread in file order. */
+    private record Block<T>(List<T> rows, List<String> problems) {}
+
+    @FunctionalInterface
+    private interface RowParser<T> {
+        /** Returns the parsed row, or null after adding a problem for a line to skip. */
+        T parse(RecordReader record, List<String> problems);
+    }
+
+    private record AnimalRow(String ownerId, Animal animal) {}
+
+    private final JavaApplication app = new JavaApplication();
+    private final ExecutorService parsers;
+    private final int maxInFlight;
+    private final List<String> problems = new ArrayList<>();
+    private long problemCount;
+    private final Map<String, Owner> ownersById = new HashMap<>();
+    private final Set<String> animalRows = new HashSet<>();
+    private final Set<String> animalNames = new HashSet<>();
+    private JavaApplication.LoadedData data;
+    private long ownersImported;
+    private long animalsImported;
+    private long duplicates;
+
+    BulkImport(int threads) {
+        parsers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "vet-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maxInFlight = threads * 2;
+    }
+
+    public static void main(String[] args) throws Exception {
+        File ownersCsv = null;
+        File animalsCsv = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 == args.length) {
+                usage();
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--owners" -> ownersCsv = new File(value);
+                case "--animals" -> animalsCsv = new File(value);
+                case "--threads" -> threads = Math.max(1, Integer.parseInt(value));
+                default -> usage();
+            }
+        }
+        if (ownersCsv == null && animalsCsv == null) {
+            usage();
+        }
+
+        long started = System.nanoTime();
+        BulkImport importer = new BulkImport(threads);
+        importer.run(ownersCsv, animalsCsv);
+        importer.report(System.nanoTime() - started);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java BulkImport [--owners owners.csv] [--animals animals.csv] [--threads n]");
+        System.exit(2);
+    }
+
+    void run(File ownersCsv, File animalsCsv) throws IOException, InterruptedException, ExecutionException {
+        data = app.loadBatch(problems);
+        problemCount = problems.size();
+        for (Owner owner : data.owners) {
+            ownersById.putIfAbsent(owner.getId(), owner);
+        }
+        for (Animal animal : data.animals) {
+            String ownerId = animal.getOwner() != null ? animal.getOwner().getId() : "";
+            animalRows.add(rowKey(ownerId, animal));
+            animalNames.add(nameKey(ownerId, animal));
+        }
+
+        if (ownersCsv != null) {
+            stream(ownersCsv, BulkImport::parseOwner, this::mergeOwner);
+        }
+        if (animalsCsv != null) {
+            stream(animalsCsv, BulkImport::parseAnimal, this::mergeAnimal);
+        }
+        parsers.shutdown();
+        app.saveBatch(data);
+    }
+
+    private static Owner parseOwner(RecordReader record, List<String> problems) {
+        if (record.fieldCount() == 0) {
+            return null;
+        }
+        if (record.fieldCount() < 3 || record.field(1).isEmpty()) {
+            problems.add(record.location() + ": expected name,id,phone");
+            return null;
+        }
+        return new Owner(record.field(0), record.field(1), record.field(2));
+    }
+
+    private static AnimalRow parseAnimal(RecordReader record, List<String> problems) {
+        if (record.fieldCount() == 0) {
+            return null;
+        }
+        if (record.fieldCount() != 5) {
+            problems.add(record.location() + ": expected ownerId,Type,name,age,detail");
+            return null;
+        }
+        Animal animal = JavaApplication.parseAnimal(record, 1);
+        if (animal == null) {
+            problems.add(record.location() + ": unknown animal type '" + record.field(1) + "'");
+            return null;
+        }
+        return new AnimalRow(record.field(0), animal);
+    }
+
+    private void mergeOwner(Owner owner) {
+        if (ownersById.putIfAbsent(owner.getId(), owner) != null) {
+            duplicates++;
+            return;
+        }
+        data.addOwner(owner);
+        ownersImported++;
+    }
+
+    private void mergeAnimal(AnimalRow row) {
+        Owner owner = row.ownerId().isEmpty() ? null : ownersById.get(row.ownerId());
+        String ownerId = owner != null ? owner.getId() : "";
+        if (!animalRows.add(rowKey(ownerId, row.animal()))) {
+            duplicates++;
+            return;
+        }
+        if (!animalNames.add(nameKey(ownerId, row.animal()))) {
+            problem("possible duplicate: another " + row.animal().getType() + " named " + row.animal().getName()
+                    + (owner != null ? " belongs to owner '" + ownerId + "'" : " has no owner")
+                    + "; imported as a separate animal");
+        }
+        if (owner == null && !row.ownerId().isEmpty()) {
+            problem("unknown owner '" + row.ownerId() + "' for " + row.animal().getName()
+                    + ", imported without an owner");
+        }
+        data.addAnimal(row.animal());
+        if (owner != null) {
+            owner.addPet(row.animal());
+        }
+        animalsImported++;
+    }
+
+    /** Owner, type and name, which two different pets may share. */
+    private static String nameKey(String ownerId, Animal animal) {
+        return ownerId + '\0' + animal.getType() + '\0' + animal.getName();
+    }
+
+    /** Every field of the row, so only a repeated row matches. */
+    private static String rowKey(String ownerId, Animal animal) {
+        String detail = switch (animal) {
+            case Dog dog -> dog.getBreed();
+            case Cat cat -> String.valueOf(cat.isIndoor());
+            case Bird bird -> String.valueOf(bird.isCanFly());
+            default -> "";
+        };
+        return nameKey(ownerId, animal) + '\0' + animal.getAge() + '\0' + detail;
+    }
+
+    /**
+     * Cuts the file into blocks of whole records, never inside a quoted
+     * field, parses up to
+     * {@code maxInFlight} of them concurrently and hands the rows to
+     * {@code merge} in file order.
+     */
+    private <T> void stream(File file, RowParser<T> parser, Consumer<T> merge)
+            throws IOException, InterruptedException, ExecutionException {
+        Deque<Future<Block<T>>> inFlight = new ArrayDeque<>();
+        try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            char[] buffer = new char[BLOCK_CHARS];
+            int length = 0;
+            long linesBefore = 0;
+            boolean eof = false;
+            while (!eof || length > 0) {
+                while (!eof && length < buffer.length) {
+                    int read = in.read(buffer, length, buffer.length - length);
+                    if (read < 0) {
+                        eof = true;
+                    } else {
+                        length += read;
+                    }
+                }
+                int end = eof ? length : RecordReader.lastRecordEnd(buffer, length);
+                if (end == 0) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    continue;
+                }
+
+                char[] block = Arrays.copyOf(buffer, end);
+                long firstLine = linesBefore;
+                inFlight.add(parsers.submit(() -> parse(block, file.getName(), firstLine, parser)));
+                linesBefore += countLines(block);
+                System.arraycopy(buffer, end, buffer, 0, length - end);
+                length -= end;
+
+                while (inFlight.size() >= maxInFlight) {
+                    mergeBlock(inFlight.poll().get(), merge);
+                }
+            }
+        }
+        while (!inFlight.isEmpty()) {
+            mergeBlock(inFlight.poll().get(), merge);
+        }
+    }
+
+    private static <T> Block<T> parse(char[] block, String source, long linesBefore, RowParser<T> parser)
+            throws IOException {
+        List<T> rows = new ArrayList<>();
+        List<String> problems = new ArrayList<>();
+        try (RecordReader record = new RecordReader(new CharArrayReader(block), source, linesBefore)) {
+            while (record.next()) {
+                try {
+                    T row = parser.parse(record, problems);
+                    if (row != null) {
+                        rows.add(row);
+                    }
+                } catch (NumberFormatException e) {
+                    problems.add(record.location() + ": " + e.getMessage());
+                }
+            }
+        }
+        return new Block<>(rows, problems);
+    }
+
+    private <T> void mergeBlock(Block<T> block, Consumer<T> merge) {
+        block.problems().forEach(this::problem);
+        block.rows().forEach(merge);
+    }
+
+    /** Keeps the first few problems for the report and only counts the rest. */
+    private void problem(String message) {
+        if (problems.size() < MAX_REPORTED_PROBLEMS) {
+            problems.add(message);
+        }
+        problemCount++;
+    }
+
+    /**
+     * Every line break in the block, quoted or not, since {@link RecordReader}
+     * numbers physical lines too.
+     */
+    private static long countLines(char[] block) {
+        long lines = 0;
+        for (char c : block) {
+            if (c == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private void report(long elapsedNanos) {
+        problems.forEach(System.err::println);
+        if (problemCount > problems.size()) {
+            System.err.println("... and " + (problemCount - problems.size()) + " more problem(s)");
+        }
+        double seconds = elapsedNanos / 1e9;
+        long rows = ownersImported + animalsImported + duplicates;
+        System.out.printf("Imported %d owners and %d animals, skipped %d duplicates and %d problem(s) in %.1f s"
+                + " (%,.0f rows/min)%n", ownersImported, animalsImported, duplicates, problemCount, seconds,
+                rows / seconds * 60);
+    }
+}
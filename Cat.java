@@ -0,0 +1,31 @@
+public class Cat extends Animal {
+    private boolean indoor;
+
+    public Cat(String name, int age, boolean indoor) {
+        super(name, age);
+        this.indoor = indoor;
+    }
+
+    public Cat(long id, String name, int age, boolean indoor) {
+        super(id, name, age);
+        this.indoor = indoor;
+    }
+
+    @Override
+    public String provideService(String type) {
+        return type + " for " + (indoor ? "indoor cat" : "cat");
+    }
+
+    @Override
+    public String getType() {
+        return "Cat";
+    }
+
+    @Override
+    protected String describe() {
+        return super.describe() + ", Indoor: " + indoor + ", " + getPrice();
+    }
+
+    public boolean isIndoor() { return indoor; }
+    public void setIndoor(boolean indoor) { this.indoor = indoor; detailsChanged(); }
+}
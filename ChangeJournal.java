@@ -0,0 +1,216 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Append-only log of the edits made since the last snapshot. Records go to
+ * numbered segments (journal.1.log, journal.2.log, ...); {@link #rotate()}
+ * closes the current segment so a snapshot can be taken that covers it, and
+ * {@link #deleteUpTo(long)} drops segments once that snapshot is committed.
+ *
+ * <p>Appending and rotating only touch memory: records collect in a buffer
+ * per segment, and rotating swaps in a fresh buffer. {@link #sync()} takes
+ * the buffers and does every file operation (opening segments, writing,
+ * fsync) without holding the monitor that append needs, so an edit never
+ * waits for the disk, even while a sync or a snapshot is running. A chunk
+ * stays queued until it is fully written, so a failed sync loses nothing:
+ * the next one writes it again.
+ */
+public class ChangeJournal implements Closeable {
+    private static final String PREFIX = "journal.";
+    private static final String SUFFIX = ".log";
+    private static final Metrics.Counter RECORDS = Metrics.counter("journal.records");
+    private static final Metrics.Timer SYNC_TIME = Metrics.timer("save.journalSync");
+
+    /** Records of one segment that have not been written yet. */
+    private record Chunk(long segment, StringBuilder text) {}
+
+    private final Path directory;
+
+    // Guarded by this; memory only.
+    private boolean open;
+    private long sequence;
+    private StringBuilder buffer = new StringBuilder();
+    private int records;
+    private final List<Chunk> unwritten = new ArrayList<>();
+
+    // Guarded by io, which is never taken while holding this.
+    private final Object io = new Object();
+    private long channelSegment;
+    private FileChannel channel;
+
+    public ChangeJournal(Path directory) {
+        this.directory = directory;
+    }
+
+    /** Sequence numbers of the segments on disk, oldest first. */
+    public List<Long> segments() throws IOException {
+        List<Long> found = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    found.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+    public File segmentFile(long segment) {
+        return directory.resolve(PREFIX + segment + SUFFIX).toFile();
+    }
+
+    /**
+     * Starts appending to a fresh segment numbered after every existing one.
+     * Its file is created by the first sync that has records for it.
+     */
+    public synchronized void open(long after) throws IOException {
+        List<Long> existing = segments();
+        sequence = (existing.isEmpty() ? after : Math.max(after, existing.get(existing.size() - 1))) + 1;
+        buffer = new StringBuilder();
+        records = 0;
+        open = true;
+    }
+
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Buffers a record for the next sync. Returns false, keeping nothing,
+     * once the journal is closed, since no sync would come; it never throws,
+     * as callers append while holding the store's locks.
+     */
+    public synchronized boolean append(String record) {
+        if (!open) {
+            return false;
+        }
+        buffer.append(record).append('\n');
+        records++;
+        RECORDS.increment();
+        return true;
+    }
+
+    /** Records appended since the last rotation. */
+    public synchronized int records() {
+        return records;
+    }
+
+    /**
+     * Closes the current segment for appends and starts the next one.
+     * Returns the number of the closed segment, which a snapshot taken now
+     * covers. Only swaps buffers, so it is cheap enough to call while the
+     * store is frozen; the closed segment reaches the disk on the next sync.
+     */
+    public synchronized long rotate() {
+        long closed = sequence;
+        retireBuffer();
+        sequence++;
+        records = 0;
+        return closed;
+    }
+
+    /** Writes and fsyncs every record appended so far. */
+    public void sync() throws IOException {
+        long started = System.nanoTime();
+        synchronized (io) {
+            write();
+            if (channel != null) {
+                channel.force(false);
+            }
+        }
+        SYNC_TIME.since(started);
+    }
+
+    /** Removes segments already folded into a snapshot, on disk and not yet written. */
+    public void deleteUpTo(long segment) throws IOException {
+        synchronized (io) {
+            synchronized (this) {
+                unwritten.removeIf(chunk -> chunk.segment() <= segment);
+            }
+            if (channel != null && channelSegment <= segment) {
+                channel.close();
+                channel = null;
+            }
+            for (long existing : segments()) {
+                if (existing <= segment) {
+                    Files.deleteIfExists(segmentFile(existing).toPath());
+                }
+            }
+        }
+    }
+
+    /** Writes what is buffered, without an fsync, and stops accepting records. */
+    @Override
+    public void close() throws IOException {
+        synchronized (io) {
+            write();
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+        synchronized (this) {
+            open = false;
+        }
+    }
+
+    /** Moves the current buffer to the unwritten chunks; call holding this. */
+    private void retireBuffer() {
+        if (buffer.length() > 0) {
+            unwritten.add(new Chunk(sequence, buffer));
+            buffer = new StringBuilder();
+        }
+    }
+
+    /**
+     * Writes the unwritten chunks in order, switching segment files as
+     * needed; call holding io. Each chunk leaves the queue only once it is
+     * written. A chunk whose write fails is cut off the segment again, so the
+     * retry does not leave half a record in front of it.
+     */
+    private void write() throws IOException {
+        List<Chunk> chunks;
+        synchronized (this) {
+            retireBuffer();
+            chunks = new ArrayList<>(unwritten);
+        }
+        for (Chunk chunk : chunks) {
+            if (channel == null || channelSegment != chunk.segment()) {
+                if (channel != null) {
+                    channel.force(false);
+                    channel.close();
+                }
+                channel = FileChannel.open(segmentFile(chunk.segment()).toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                channelSegment = chunk.segment();
+            }
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(chunk.text()));
+            long before = channel.size();
+            try {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            } catch (IOException e) {
+                try {
+                    channel.truncate(before);
+                } catch (IOException truncateFailed) {
+                    e.addSuppressed(truncateFailed);
+                }
+                throw e;
+            }
+            synchronized (this) {
+                // Only write and deleteUpTo remove chunks, both holding io, so this one is still the head.
+                unwritten.remove(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,313 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Regression checks that run without a test framework. Each check prints
+ * one PASS or FAIL line with what it measured, and the exit code is 1 if
+ * any failed, so a nightly job or a pre-merge script can run them. Timing
+ * checks compare two sizes of the same data set and fail on growth, not on
+ * absolute times, so they hold on any machine.
+ *
+ * <pre>
+ * java Checks [--only ownerColumnFlat,loadScaling,...]
+ * </pre>
+ *
+ * The checks write data files into the working directory and delete them
+ * afterwards, so run them from an empty one.
+ */
+public class Checks {
+    /** Returns a description of what was measured, or throws AssertionError with what went wrong. */
+    @FunctionalInterface
+    private interface Check {
+        String run() throws Exception;
+    }
+
+    private static final Map<String, Check> CHECKS = new LinkedHashMap<>();
+    private static final int RUNS = 5;
+    private static final int OWNER_CELLS = 1000;
+    private static final double MAX_CELL_RATIO = 10;
+    private static final double MAX_LOAD_RATIO = 3.0;
+
+    static {
+        CHECKS.put("ownerColumnFlat", Checks::ownerColumnFlat);
+        CHECKS.put("loadScaling", Checks::loadScaling);
+        CHECKS.put("bulkImportBlocks", Checks::bulkImportBlocks);
+        CHECKS.put("bulkImportSameNamedPets", Checks::bulkImportSameNamedPets);
+    }
+
+    private static final String[] DATA_FILES = {"owners.txt", "animals.txt", "relations.txt", "data.bin",
+            "snapshot.gen"};
+
+    public static void main(String[] args) throws Exception {
+        Set<String> only = CHECKS.keySet();
+        if (args.length == 2 && args[0].equals("--only")) {
+            only = new LinkedHashSet<>(Arrays.asList(args[1].split(",")));
+        } else if (args.length != 0) {
+            System.err.println("Usage: java Checks [--only " + String.join(",", CHECKS.keySet()) + "]");
+            System.exit(2);
+        }
+        if (hasDataFiles()) {
+            System.err.println("The working directory already holds data files; run the checks from an empty one.");
+            System.exit(2);
+        }
+
+        int failed = 0;
+        for (String name : only) {
+            Check check = CHECKS.get(name);
+            if (check == null) {
+                System.err.println("Unknown check " + name + "; known: " + String.join(",", CHECKS.keySet()));
+                System.exit(2);
+            }
+            try {
+                System.out.println("PASS " + name + ": " + check.run());
+            } catch (AssertionError e) {
+                System.out.println("FAIL " + name + ": " + e.getMessage());
+                failed++;
+            } finally {
+                deleteDataFiles();
+            }
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * Times the Owner cell of the Animals table at 1,000 and 100,000 animals
+     * and checks the time per cell stays within {@link #MAX_CELL_RATIO}. The
+     * owner scan that the back-reference replaced got about as many times
+     * slower per cell as the roster grew, a hundred here.
+     */
+    private static String ownerColumnFlat() {
+        double small = nanosPerOwnerCell(1_000);
+        double large = nanosPerOwnerCell(100_000);
+        double ratio = large / small;
+        String measured = String.format(Locale.ROOT, "%.0f ns per cell at 1,000 animals, %.0f at 100,000,"
+                + " ratio %.1f (limit %.0f)", small, large, ratio, MAX_CELL_RATIO);
+        check(ratio <= MAX_CELL_RATIO, measured);
+        return measured;
+    }
+
+    /**
+     * Best of {@link #RUNS} fills of {@link #OWNER_CELLS} distinct random
+     * rows, each through a fresh {@link FxModel} as when rows first scroll
+     * into view, after one untimed fill to warm up.
+     */
+    private static double nanosPerOwnerCell(int size) {
+        List<Animal> animals = Benchmarks.generate(size).animals;
+        List<Animal> rows = new ArrayList<>(animals);
+        Collections.shuffle(rows, new Random(size));
+        rows = rows.subList(0, OWNER_CELLS);
+        long best = Long.MAX_VALUE;
+        long length = 0;
+        for (int run = 0; run <= RUNS; run++) {
+            FxModel fxModel = new FxModel();
+            long started = System.nanoTime();
+            for (Animal animal : rows) {
+                length += fxModel.ownerName(animal).getValue().length();
+            }
+            if (run > 0) {
+                best = Math.min(best, System.nanoTime() - started);
+            }
+        }
+        check(length > 0, "no owner names were read");
+        return (double) best / OWNER_CELLS;
+    }
+
+    /**
+     * Loads text files of 20,000 and 200,000 animals, in the current format,
+     * where relations.txt links IDs, and in the legacy one, where it links
+     * owner and pet names, the way the application starts. The check fails
+     * if the time per record at the larger size is more than {@link
+     * #MAX_LOAD_RATIO} times the time at the smaller one; a quadratic load
+     * would be about ten times slower per record.
+     */
+    private static String loadScaling() throws Exception {
+        List<String> measured = new ArrayList<>();
+        boolean linear = true;
+        for (boolean legacy : new boolean[] {false, true}) {
+            double small = nanosPerLoadedRecord(20_000, legacy);
+            double large = nanosPerLoadedRecord(200_000, legacy);
+            double ratio = large / small;
+            measured.add(String.format(Locale.ROOT, "%s format %.0f ns per record at 20,000 animals, %.0f at"
+                    + " 200,000, ratio %.2f", legacy ? "legacy" : "current", small, large, ratio));
+            linear &= ratio <= MAX_LOAD_RATIO;
+        }
+        String description = String.join("; ", measured) + " (limit " + MAX_LOAD_RATIO + ")";
+        check(linear, description);
+        return description;
+    }
+
+    /** Best of {@link #RUNS} loads, after one untimed load to warm up. */
+    private static double nanosPerLoadedRecord(int animals, boolean legacy) throws IOException {
+        long records = writeTextFiles(animals, legacy);
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run <= RUNS; run++) {
+            long started = System.nanoTime();
+            JavaApplication app = new JavaApplication();
+            List<String> problems = new ArrayList<>();
+            JavaApplication.LoadedData loaded;
+            try {
+                loaded = app.loadBatch(problems);
+            } finally {
+                app.closeBatch();
+            }
+            if (run > 0) {
+                best = Math.min(best, System.nanoTime() - started);
+            }
+            check(loaded.animals.size() == animals && problems.isEmpty(),
+                    "loaded " + loaded.animals.size() + " of " + animals + " animals, problems " + problems);
+        }
+        deleteDataFiles();
+        return (double) best / records;
+    }
+
+    /**
+     * Writes one owner per three animals, owning two of them, and returns the
+     * number of lines written. Legacy files have no animal IDs and link by
+     * name, so every name is unique as the old format needs.
+     */
+    private static long writeTextFiles(int animals, boolean legacy) throws IOException {
+        long lines = 0;
+        try (Writer owners = textWriter("owners.txt");
+             Writer pets = textWriter("animals.txt");
+             Writer relations = textWriter("relations.txt")) {
+            String owner = null;
+            String ownerId = null;
+            for (int i = 0; i < animals; i++) {
+                String name = "Pet" + Integer.toString(i, 36);
+                String id = legacy ? "" : "," + (i + 1);
+                switch (i % 3) {
+                    case 0 -> pets.write("Dog," + name + "," + i % 20 + ",Mixed" + id + "\n");
+                    case 1 -> pets.write("Cat," + name + "," + i % 20 + ",true" + id + "\n");
+                    default -> pets.write("Bird," + name + "," + i % 20 + ",false" + id + "\n");
+                }
+                lines++;
+                if (i % 3 == 0) {
+                    owner = "Owner " + i;
+                    ownerId = "O" + i;
+                    owners.write(owner + "," + ownerId + ",555-" + (1000 + i % 9000) + "\n");
+                    lines++;
+                }
+                if (i % 3 != 2) {
+                    relations.write(legacy ? owner + "," + name + "\n" : ownerId + "," + (i + 1) + "\n");
+                    lines++;
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static Writer textWriter(String name) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(name), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Imports an owner file whose one quoted name holds a line break that
+     * falls just before BulkImport's block boundary, and checks the owner
+     * comes back whole rather than cut into two bad records.
+     */
+    private static String bulkImportBlocks() throws Exception {
+        File csv = new File("owners-import.csv");
+        String splitName = "Split\nName " + "x".repeat(40);
+        int owners = 0;
+        try {
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csv),
+                    StandardCharsets.UTF_8))) {
+                // The split owner's record starts with "Split and its line break is the 7th character.
+                int recordStart = BulkImport.BLOCK_CHARS - 5 - 6;
+                long written = 0;
+                String line;
+                while (written + (line = "Owner " + owners + ",ID" + owners + ",555\n").length() + 9
+                        <= recordStart) {
+                    out.write(line);
+                    written += line.length();
+                    owners++;
+                }
+                out.write("Pad,PAD," + "P".repeat((int) (recordStart - written - 9)) + "\n");
+                owners++;
+                out.write(RecordReader.escape(splitName) + ",IDSPLIT,555\n");
+                owners++;
+                for (int i = 0; i < 1000; i++, owners++) {
+                    out.write("After " + i + ",AFTER" + i + ",555\n");
+                }
+            }
+
+            new BulkImport(2).run(csv, null);
+            JavaApplication app = new JavaApplication();
+            List<String> problems = new ArrayList<>();
+            JavaApplication.LoadedData loaded = app.loadBatch(problems);
+            app.closeBatch();
+            check(problems.isEmpty(), "reloading the import reported " + problems);
+            check(loaded.owners.size() == owners, "expected " + owners + " owners, found " + loaded.owners.size());
+            Owner split = loaded.owners.stream().filter(owner -> owner.getId().equals("IDSPLIT")).findFirst()
+                    .orElse(null);
+            check(split != null && split.getName().equals(splitName),
+                    "the owner across the block boundary came back as " + (split == null ? "nothing"
+                            : "'" + split.getName() + "'"));
+            return owners + " owners imported, the quoted line break at the block boundary kept";
+        } finally {
+            csv.delete();
+        }
+    }
+
+    /**
+     * Imports two different dogs called Max for one owner and a repeated row,
+     * and checks that both dogs arrive and only the repeat is dropped.
+     */
+    private static String bulkImportSameNamedPets() throws Exception {
+        File owners = new File("owners-import.csv");
+        File animals = new File("animals-import.csv");
+        try {
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(owners), StandardCharsets.UTF_8)) {
+                out.write("Ann,A1,555\n");
+            }
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(animals), StandardCharsets.UTF_8)) {
+                out.write("A1,Dog,Max,3,Beagle\nA1,Dog,Max,9,Collie\nA1,Dog,Max,3,Beagle\n");
+            }
+
+            new BulkImport(2).run(owners, animals);
+            JavaApplication app = new JavaApplication();
+            List<String> problems = new ArrayList<>();
+            JavaApplication.LoadedData loaded = app.loadBatch(problems);
+            app.closeBatch();
+            List<Animal> pets = loaded.owners.stream().filter(owner -> owner.getId().equals("A1"))
+                    .flatMap(owner -> owner.getPets().stream()).toList();
+            check(pets.size() == 2, "expected the two dogs called Max, found " + pets);
+            check(loaded.animals.size() == 2, "expected the repeated row to be dropped, found " + loaded.animals);
+            return "two dogs called Max kept apart, the repeated row dropped";
+        } finally {
+            owners.delete();
+            animals.delete();
+        }
+    }
+
+    private static boolean hasDataFiles() {
+        for (String name : DATA_FILES) {
+            if (new File(name).exists()) {
+                return true;
+            }
+        }
+        File[] journal = new File(".").listFiles((dir, name) -> name.startsWith("journal."));
+        return journal != null && journal.length > 0;
+    }
+
+    private static void deleteDataFiles() {
+        for (String name : DATA_FILES) {
+            new File(name).delete();
+        }
+        File[] journal = new File(".").listFiles((dir, name) -> name.startsWith("journal."));
+        if (journal != null) {
+            for (File file : journal) {
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,296 @@
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Columnar roster for animal lists too large to keep as objects, such as the
+ * whole archive. A row is a slot in each column: the ID in an int array
+ * (widened to longs only if an ID needs it), the age in a byte (with the
+ * rare age past {@link #WIDE_AGE} kept aside), the type and the
+ * indoor/can-fly flag packed into one byte, and names, breeds and owners as
+ * codes into one string pool, so a value repeated across thousands of rows
+ * is stored once. Dates are kept per run of rows, since rows are appended as
+ * they are archived and a whole batch shares its date. {@link #row(int)}
+ * returns a small view for the tables and {@link #toAnimal(int)} a detached
+ * object when one is needed.
+ *
+ * <p>Not thread-safe: fill it on one thread, then hand it over.
+ */
+public class CompactRoster {
+    private static final String[] TYPES = {"Dog", "Cat", "Bird"};
+    private static final int NONE = -1;
+    private static final int TYPE_MASK = 0b11;
+    private static final int FLAG = 0b100;
+    /** Ages from 0 up to this one, exclusive, are stored in the byte column. */
+    private static final int WIDE_AGE = 0xFF;
+
+    private final Pool pool = new Pool();
+    private final Map<Integer, Integer> wideAges = new HashMap<>();
+    private int[] ids;
+    private long[] longIds;
+    private byte[] ages;
+    private byte[] kinds;
+    private int[] names;
+    private int[] breeds;
+    private int[] ownerNames;
+    private int[] ownerIds;
+    private int[] dateRunStarts = new int[16];
+    private int[] dateRunCodes = new int[16];
+    private int dateRuns;
+    private int size;
+
+    public CompactRoster(int expectedRows) {
+        int capacity = Math.max(16, expectedRows);
+        ids = new int[capacity];
+        ages = new byte[capacity];
+        kinds = new byte[capacity];
+        names = new int[capacity];
+        breeds = new int[capacity];
+        ownerNames = new int[capacity];
+        ownerIds = new int[capacity];
+    }
+
+    /** Appends a row and returns its index; breed, owner and date may be null. */
+    public int add(long id, String type, String name, int age, String breed, boolean flag,
+                   String ownerName, String ownerId, String date) {
+        int typeCode = switch (type) {
+            case "Dog" -> 0;
+            case "Cat" -> 1;
+            case "Bird" -> 2;
+            default -> throw new IllegalArgumentException("Unknown animal type: " + type);
+        };
+        if (size == names.length) {
+            grow();
+        }
+        if (longIds == null && (int) id != id) {
+            longIds = new long[names.length];
+            for (int i = 0; i < size; i++) {
+                longIds[i] = ids[i];
+            }
+            ids = null;
+        }
+        if (longIds != null) {
+            longIds[size] = id;
+        } else {
+            ids[size] = (int) id;
+        }
+        kinds[size] = (byte) (typeCode | (flag ? FLAG : 0));
+        names[size] = pool.code(name);
+        if (age >= 0 && age < WIDE_AGE) {
+            ages[size] = (byte) age;
+        } else {
+            ages[size] = (byte) WIDE_AGE;
+            wideAges.put(size, age);
+        }
+        breeds[size] = pool.code(breed);
+        ownerNames[size] = pool.code(ownerName);
+        ownerIds[size] = pool.code(ownerId);
+        addDate(pool.code(date));
+        return size++;
+    }
+
+    /** Starts a new date run unless the row continues the last one. */
+    private void addDate(int code) {
+        if (dateRuns > 0 && dateRunCodes[dateRuns - 1] == code) {
+            return;
+        }
+        if (dateRuns == dateRunStarts.length) {
+            dateRunStarts = Arrays.copyOf(dateRunStarts, dateRuns * 2);
+            dateRunCodes = Arrays.copyOf(dateRunCodes, dateRuns * 2);
+        }
+        dateRunStarts[dateRuns] = size;
+        dateRunCodes[dateRuns] = code;
+        dateRuns++;
+    }
+
+    /** Appends the animal with its current owner. */
+    public int add(Animal animal, String date) {
+        Owner owner = animal.getOwner();
+        String breed = animal instanceof Dog dog ? dog.getBreed() : null;
+        boolean flag = animal instanceof Cat cat ? cat.isIndoor() : animal instanceof Bird bird && bird.isCanFly();
+        return add(animal.getId(), animal.getType(), animal.getName(), animal.getAge(), breed, flag,
+                owner != null ? owner.getName() : null, owner != null ? owner.getId() : null, date);
+    }
+
+    private void grow() {
+        int capacity = names.length + (names.length >> 1);
+        if (longIds != null) {
+            longIds = Arrays.copyOf(longIds, capacity);
+        } else {
+            ids = Arrays.copyOf(ids, capacity);
+        }
+        ages = Arrays.copyOf(ages, capacity);
+        kinds = Arrays.copyOf(kinds, capacity);
+        names = Arrays.copyOf(names, capacity);
+        breeds = Arrays.copyOf(breeds, capacity);
+        ownerNames = Arrays.copyOf(ownerNames, capacity);
+        ownerIds = Arrays.copyOf(ownerIds, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Row row(int index) {
+        Objects.checkIndex(index, size);
+        return new Row(this, index);
+    }
+
+    public long id(int index) { return longIds != null ? longIds[index] : ids[index]; }
+    public String type(int index) { return TYPES[kinds[index] & TYPE_MASK]; }
+    public String name(int index) { return pool.get(names[index]); }
+    public String breed(int index) { return pool.get(breeds[index]); }
+    /** Whether a cat is indoor or a bird can fly; false for dogs. */
+    public boolean flag(int index) { return (kinds[index] & FLAG) != 0; }
+    public String ownerName(int index) { return pool.get(ownerNames[index]); }
+    public String ownerId(int index) { return pool.get(ownerIds[index]); }
+
+    public int age(int index) {
+        int age = ages[index] & 0xFF;
+        return age == WIDE_AGE ? wideAges.get(index) : age;
+    }
+
+    /** The date of the run the row belongs to, found by binary search over the run starts. */
+    public String date(int index) {
+        Objects.checkIndex(index, size);
+        int run = Arrays.binarySearch(dateRunStarts, 0, dateRuns, index);
+        return pool.get(dateRunCodes[run >= 0 ? run : -run - 2]);
+    }
+
+    /** A new animal with the row's values, not linked to any owner. */
+    public Animal toAnimal(int index) {
+        return switch (kinds[index] & TYPE_MASK) {
+            case 0 -> new Dog(id(index), name(index), age(index), breed(index));
+            case 1 -> new Cat(id(index), name(index), age(index), flag(index));
+            default -> new Bird(id(index), name(index), age(index), flag(index));
+        };
+    }
+
+    /**
+     * The same text as {@link Animal#toString()} of {@link #toAnimal(int)},
+     * formatted from the columns without building the animal.
+     */
+    public String details(int index) {
+        String type = type(index);
+        String breed = breed(index);
+        boolean flag = flag(index);
+        String extra = switch (kinds[index] & TYPE_MASK) {
+            case 0 -> "Breed: " + breed;
+            case 1 -> "Indoor: " + flag;
+            default -> "Can fly: " + flag;
+        };
+        return "Type: " + type + ", Name: " + name(index) + ", Age: " + age(index) + ", " + extra + ", "
+                + Pricing.label(Pricing.current().quote(type, breed, flag, Pricing.STANDARD_SERVICE));
+    }
+
+    /** Distinct strings held by the pool. */
+    public int pooledStrings() {
+        return pool.size();
+    }
+
+    /** View of one row; it holds no values of its own. */
+    public static final class Row {
+        private final CompactRoster roster;
+        private final int index;
+
+        private Row(CompactRoster roster, int index) {
+            this.roster = roster;
+            this.index = index;
+        }
+
+        public int getIndex() { return index; }
+        public long getId() { return roster.id(index); }
+        public String getType() { return roster.type(index); }
+        public String getName() { return roster.name(index); }
+        public int getAge() { return roster.age(index); }
+        public String getBreed() { return roster.breed(index); }
+        public boolean getFlag() { return roster.flag(index); }
+        public String getOwnerName() { return roster.ownerName(index); }
+        public String getOwnerId() { return roster.ownerId(index); }
+        public String getDate() { return roster.date(index); }
+
+        /** The same text as {@link Animal#toString()} of the animal the row describes. */
+        public String getDetails() {
+            return roster.details(index);
+        }
+    }
+
+    /**
+     * Dictionary encoding: each distinct string gets the next code, null is
+     * {@link #NONE}. The strings are kept as UTF-8 in one byte array and
+     * found through an open-addressing table of codes, filled to at most
+     * three quarters, so a pooled string costs its bytes plus a few ints
+     * rather than a String, a map entry and a boxed code.
+     */
+    private static final class Pool {
+        private byte[] bytes = new byte[1024];
+        private int[] offsets = new int[65];
+        private int[] table = new int[128];
+        private int count;
+
+        int code(String value) {
+            if (value == null) {
+                return NONE;
+            }
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            int mask = table.length - 1;
+            for (int slot = hash(encoded, 0, encoded.length) & mask; ; slot = (slot + 1) & mask) {
+                int code = table[slot] - 1;
+                if (code == NONE) {
+                    code = append(encoded);
+                    table[slot] = code + 1;
+                    if (count * 4 > table.length * 3) {
+                        rehash();
+                    }
+                    return code;
+                }
+                if (Arrays.equals(bytes, offsets[code], offsets[code + 1], encoded, 0, encoded.length)) {
+                    return code;
+                }
+            }
+        }
+
+        String get(int code) {
+            if (code == NONE) {
+                return null;
+            }
+            return new String(bytes, offsets[code], offsets[code + 1] - offsets[code], StandardCharsets.UTF_8);
+        }
+
+        int size() {
+            return count;
+        }
+
+        private int append(byte[] encoded) {
+            int start = offsets[count];
+            if (start + encoded.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length + (bytes.length >> 1), start + encoded.length));
+            }
+            System.arraycopy(encoded, 0, bytes, start, encoded.length);
+            if (count + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length + (offsets.length >> 1));
+            }
+            offsets[count + 1] = start + encoded.length;
+            return count++;
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for (int code = 0; code < count; code++) {
+                int slot = hash(bytes, offsets[code], offsets[code + 1]) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = code + 1;
+            }
+        }
+
+        private static int hash(byte[] data, int from, int to) {
+            int h = 0;
+            for (int i = from; i < to; i++) {
+                h = 31 * h + data[i];
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+public class Dog extends Animal {
+    private String breed;
+
+    public Dog(String name, int age, String breed) {
+        super(name, age);
+        this.breed = breed;
+    }
+
+    public Dog(long id, String name, int age, String breed) {
+        super(id, name, age);
+        this.breed = breed;
+    }
+
+    @Override
+    public String provideService(String type) {
+        return type + " for dog (" + breed + ")";
+    }
+
+    @Override
+    public String getType() {
+        return "Dog";
+    }
+
+    @Override
+    protected String describe() {
+        return super.describe() + ", Breed: " + breed + ", " + getPrice();
+    }
+
+    public String getBreed() { return breed; }
+    public void setBreed(String breed) { this.breed = breed; detailsChanged(); }
+}
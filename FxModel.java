@@ -0,0 +1,114 @@
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import java.util.*;
+
+/**
+ * JavaFX view of the plain model. The observable state the tables need lives
+ * here instead of in the model objects, and only for objects the UI has
+ * asked about: weak maps keep it while the row is still referenced. The
+ * application reports owner-pet changes from {@link ModelStore} and edits
+ * made through the animal setters here, so cells follow them without a
+ * table refresh. Use it on the FX thread only.
+ */
+public class FxModel {
+    private final Map<Animal, AnimalCells> animalCells = new WeakHashMap<>();
+    private final Map<Animal, StringProperty> ownerNames = new WeakHashMap<>();
+    private final Map<Owner, IntegerProperty> petCounts = new WeakHashMap<>();
+    private final Map<Owner, ObservableList<Animal>> pets = new WeakHashMap<>();
+
+    public ObservableValue<Long> id(Animal animal) {
+        return cells(animal).id;
+    }
+
+    public ObservableValue<String> name(Animal animal) {
+        return cells(animal).name;
+    }
+
+    public ObservableValue<Integer> age(Animal animal) {
+        return cells(animal).age;
+    }
+
+    public ObservableValue<String> type(Animal animal) {
+        return cells(animal).type;
+    }
+
+    /** The animal's {@link Animal#toString()} text. */
+    public ObservableValue<String> details(Animal animal) {
+        return cells(animal).details;
+    }
+
+    /** The owner's name, or "None". */
+    public ObservableValue<String> ownerName(Animal animal) {
+        return ownerNames.computeIfAbsent(animal, a -> new SimpleStringProperty(ownerNameOf(a)));
+    }
+
+    public ObservableValue<Number> petCount(Owner owner) {
+        return petCounts.computeIfAbsent(owner, o -> new SimpleIntegerProperty(o.getPets().size()));
+    }
+
+    public ObservableList<Animal> pets(Owner owner) {
+        return FXCollections.unmodifiableObservableList(
+                pets.computeIfAbsent(owner, o -> FXCollections.observableArrayList(o.getPets())));
+    }
+
+    /** Brings the owner's pet count and pet list up to date after a change. */
+    public void petsChanged(Owner owner) {
+        IntegerProperty count = petCounts.get(owner);
+        if (count != null) {
+            count.set(owner.getPets().size());
+        }
+        ObservableList<Animal> list = pets.get(owner);
+        if (list != null) {
+            list.setAll(owner.getPets());
+        }
+    }
+
+    /** Brings the animal's cells up to date after one of its setters ran. */
+    public void animalChanged(Animal animal) {
+        AnimalCells cells = animalCells.get(animal);
+        if (cells != null) {
+            cells.name.set(animal.getName());
+            cells.age.set(animal.getAge());
+            cells.details.set(animal.toString());
+        }
+    }
+
+    public void ownerChanged(Animal animal) {
+        StringProperty name = ownerNames.get(animal);
+        if (name != null) {
+            name.set(ownerNameOf(animal));
+        }
+    }
+
+    private AnimalCells cells(Animal animal) {
+        return animalCells.computeIfAbsent(animal, AnimalCells::new);
+    }
+
+    /** The values of one animal's row, created together on first use. */
+    private static final class AnimalCells {
+        final ObjectProperty<Long> id;
+        final StringProperty name;
+        final ObjectProperty<Integer> age;
+        final StringProperty type;
+        final StringProperty details;
+
+        AnimalCells(Animal animal) {
+            id = new SimpleObjectProperty<>(animal.getId());
+            name = new SimpleStringProperty(animal.getName());
+            age = new SimpleObjectProperty<>(animal.getAge());
+            type = new SimpleStringProperty(animal.getType());
+            details = new SimpleStringProperty(animal.toString());
+        }
+    }
+
+    private static String ownerNameOf(Animal animal) {
+        return animal.getOwner() != null ? animal.getOwner().getName() : "None";
+    }
+}
@@ -0,0 +1,160 @@
+import javafx.application.Platform;
+import javafx.event.Event;
+import javafx.event.EventHandler;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Watches the FX application thread for stalls. A probe is posted to the FX
+ * thread with Platform.runLater; while it waits longer than the budget, the
+ * FX thread's stack is sampled on the metrics thread. When the probe finally
+ * runs, the stall is written to fx-stalls.log with its length, the action
+ * that was running (from {@link #track}) and the distinct stacks seen, most
+ * frequent first, which shows where the time went.
+ *
+ * <p>Every probe's wait is recorded as fx.latency and every stall as
+ * fx.stalls and fx.stalls.&lt;action&gt; in {@link Metrics}; tracked handlers
+ * are timed as action.&lt;name&gt;, which includes any dialog they wait on,
+ * though stalls inside a dialog opened through {@link #nestedLoop} are not
+ * put down to them.
+ */
+public final class FxWatchdog {
+    public static final String FILE = "fx-stalls.log";
+    private static final long NO_PROBE = Long.MIN_VALUE;
+    private static final int MAX_FRAMES = 30;
+    private static final Metrics.Timer LATENCY = Metrics.timer("fx.latency");
+    private static final Metrics.Timer STALLS = Metrics.timer("fx.stalls");
+
+    private final long budgetNanos;
+    private final long sampleMillis;
+    private final Path logFile;
+    private volatile Thread fxThread;
+    private volatile String action;
+    private final AtomicLong probePosted = new AtomicLong(NO_PROBE);
+    private volatile long lastWait;
+
+    // Only used on the metrics thread.
+    private final Map<String, Integer> stacks = new HashMap<>();
+    private String stalledAction;
+
+    /** A budget of {@code budgetMillis}, sampled four times per budget but at least every 10 ms. */
+    public FxWatchdog(Path directory, long budgetMillis) {
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        this.sampleMillis = Math.max(10, budgetMillis / 4);
+        this.logFile = directory.resolve(FILE);
+    }
+
+    /** Starts sampling; call once, from any thread. */
+    public void start() {
+        Platform.runLater(() -> fxThread = Thread.currentThread());
+        Metrics.every(sampleMillis, this::sample);
+    }
+
+    /**
+     * Wraps an event handler so that stalls while it runs are put down to
+     * {@code name}, such as the label of the button it belongs to.
+     */
+    public <E extends Event> EventHandler<E> track(String name, EventHandler<E> handler) {
+        Metrics.Timer timer = Metrics.timer("action." + name);
+        return event -> {
+            String outer = action;
+            action = name;
+            long started = System.nanoTime();
+            try {
+                handler.handle(event);
+            } finally {
+                action = outer;
+                timer.since(started);
+            }
+        };
+    }
+
+    /**
+     * Runs a nested event loop, such as a dialog's showAndWait, with no
+     * action set. The handlers that the loop dispatches are not part of
+     * the action that opened it, so stalls inside the loop are put down to
+     * the handler that is actually running, or to the pulse.
+     */
+    public <T> T nestedLoop(Supplier<T> loop) {
+        String outer = action;
+        action = null;
+        try {
+            return loop.get();
+        } finally {
+            action = outer;
+        }
+    }
+
+    private void sample() {
+        long posted = probePosted.get();
+        if (posted != NO_PROBE) {
+            if (System.nanoTime() - posted > budgetNanos) {
+                capture();
+            }
+            return;
+        }
+        if (lastWait > budgetNanos) {
+            logStall(lastWait);
+        }
+        stacks.clear();
+        stalledAction = null;
+        long now = System.nanoTime();
+        probePosted.set(now);
+        Platform.runLater(() -> {
+            lastWait = System.nanoTime() - now;
+            LATENCY.record(lastWait);
+            probePosted.set(NO_PROBE);
+        });
+    }
+
+    private void capture() {
+        Thread thread = fxThread;
+        if (thread == null) {
+            return;
+        }
+        StackTraceElement[] frames = thread.getStackTrace();
+        if (stalledAction == null) {
+            stalledAction = action != null ? action : isPulse(frames) ? "pulse" : "other";
+        }
+        StringBuilder stack = new StringBuilder();
+        for (int i = 0; i < Math.min(frames.length, MAX_FRAMES); i++) {
+            stack.append("    at ").append(frames[i]).append('\n');
+        }
+        if (frames.length > MAX_FRAMES) {
+            stack.append("    ... ").append(frames.length - MAX_FRAMES).append(" more\n");
+        }
+        stacks.merge(stack.toString(), 1, Integer::sum);
+    }
+
+    /** Whether the FX thread was laying out or rendering the scene rather than handling an event. */
+    private static boolean isPulse(StackTraceElement[] frames) {
+        for (StackTraceElement frame : frames) {
+            if (frame.getClassName().startsWith("com.sun.javafx.tk.quantum.")
+                    && frame.getMethodName().equals("pulse")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void logStall(long waitedNanos) {
+        String cause = stalledAction != null ? stalledAction : action != null ? action : "other";
+        STALLS.record(waitedNanos);
+        Metrics.timer("fx.stalls." + cause).record(waitedNanos);
+        StringBuilder report = new StringBuilder()
+                .append(Instant.now()).append(" FX thread stalled ")
+                .append(TimeUnit.NANOSECONDS.toMillis(waitedNanos)).append(" ms during ").append(cause).append('\n');
+        if (stacks.isEmpty()) {
+            report.append("  (over before a stack was sampled)\n");
+        }
+        stacks.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .forEach(sample -> report.append("  ").append(sample.getValue()).append(" sample(s):\n")
+                        .append(sample.getKey()));
+        Metrics.appendRolling(logFile, report.append('\n').toString());
+    }
+}
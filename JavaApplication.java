@@ -1,111 +1,916 @@
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
+import javafx.animation.Timeline;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.property.*;
+import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
 import javafx.geometry.*;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.image.*;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class JavaApplication extends Application {
+    private static final String SNAPSHOT_GENERATION_FILE = "snapshot.gen";
+    private static final String BINARY_SNAPSHOT_FILE = "data.bin";
+    private static final String TEXT_FORMAT = "text";
+    private static final String BINARY_FORMAT = "binary";
+    private static final List<String> DATA_FILES = List.of("owners.txt", "animals.txt", "relations.txt",
+            BINARY_SNAPSHOT_FILE, SNAPSHOT_GENERATION_FILE);
+    private static final int BINARY_FORMAT_VERSION = 2;
+    private static final int TAG_DOG = 1;
+    private static final int TAG_CAT = 2;
+    private static final int TAG_BIRD = 3;
+    private static final int COMPACTION_THRESHOLD = 1000;
+    private static final String ARCHIVE_STORE = "archive";
+    private static final int ARCHIVE_CACHED_PAGES = 64;
+    private static final List<String> ARCHIVE_COLUMNS = List.of("ID", "Type", "Name", "Age", "Details", "Owner",
+            "Owner ID", "Archived");
+    private static final String ANIMAL_PAGES = "animals-table";
+    private static final String OWNER_PAGES = "owners-table";
+    private static final String TABLE_PAGES_STAMP_FILE = "tables.gen";
+    private static final int TABLE_CACHED_PAGES = 64;
+    private static final int TABLE_PAGES_BATCH = 64 * PagedStore.PAGE_SIZE;
+    private static final List<String> ANIMAL_COLUMNS = List.of("ID", "Name", "Age", "Type", "Details", "Owner");
+    private static final List<String> OWNER_COLUMNS = List.of("Name", "ID", "Phone", "Pets Count");
+
+    private static final Metrics.Timer LOAD_TOTAL = Metrics.timer("load.total");
+    private static final Metrics.Timer LOAD_RECOVER = Metrics.timer("load.recover");
+    private static final Metrics.Timer LOAD_OWNERS = Metrics.timer("load.owners");
+    private static final Metrics.Timer LOAD_ANIMALS = Metrics.timer("load.animals");
+    private static final Metrics.Timer LOAD_RELATIONS = Metrics.timer("load.relations");
+    private static final Metrics.Timer LOAD_BINARY = Metrics.timer("load.binary");
+    private static final Metrics.Timer LOAD_JOURNAL = Metrics.timer("load.journal");
+    private static final Metrics.Counter LOADED_RECORDS = Metrics.counter("load.records");
+    private static final Metrics.Counter LOAD_PROBLEMS = Metrics.counter("load.problems");
+    private static final Metrics.Counter BYTES_READ = Metrics.counter("io.bytesRead");
+    private static final Metrics.Counter JOURNAL_SKIPPED = Metrics.counter("journal.skipped");
+    private static final Metrics.Timer SAVE_FLUSH = Metrics.timer("save.flush");
+    private static final Metrics.Timer SAVE_COMPACTION = Metrics.timer("save.compaction");
+    private static final Metrics.Timer SEARCH_QUERY = Metrics.timer("search.query");
+    private static final Metrics.Timer TABLE_UPDATE = Metrics.timer("ui.applyChanges");
+    private static final Metrics.Counter TABLE_CHANGES = Metrics.counter("ui.changes");
+    private static final Metrics.Counter ERRORS_SHOWN = Metrics.counter("ui.errors");
+
     private Stage primaryStage;
+    private TableView<Animal> animalsTable;
+    private TableView<Owner> ownersTable;
     private ObservableList<Animal> animals = FXCollections.observableArrayList();
     private ObservableList<Owner> owners = FXCollections.observableArrayList();
+    private final ExecutorService backgroundExecutor = newExecutor("vet-background", 2);
+    private final ExecutorService saveExecutor = newExecutor("vet-save", 1);
+    private final ExecutorService searchExecutor = newExecutor("vet-search", 1);
+    private final ExecutorService scheduleExecutor = newExecutor("vet-schedule", 1);
+    private final ExecutorService historyExecutor = newExecutor("vet-history", 1);
+    private final SnapshotWriter snapshotWriter = new SnapshotWriter(Path.of("").toAbsolutePath());
+    private final ChangeJournal journal = new ChangeJournal(Path.of("").toAbsolutePath());
+    private final boolean binarySnapshots = "binary".equals(System.getProperty("vet.format"));
+    private final boolean compactArchive = "compact".equals(System.getProperty("vet.archive"));
+    private final boolean pagedTables = "paged".equals(System.getProperty("vet.tables"));
+    private volatile long journalReplayedThrough;
+    private final AtomicBoolean compactionQueued = new AtomicBoolean();
+    private final AtomicBoolean journalSkipReported = new AtomicBoolean();
+    private CompletableFuture<Void> dataLoaded;
+    private final FxModel fxModel = new FxModel();
+    private SearchBox<Animal> animalSearch;
+    private SearchBox<Owner> ownerSearch;
+    private PagedStore archive;
+    private PagedRows archivedAnimals;
+    private RosterRows archivedRoster;
+    private PagedStore animalPages;
+    private PagedStore ownerPages;
+    private VetRepository repository;
+    private ModelStore store;
+    private final FxWatchdog watchdog = new FxWatchdog(Path.of("").toAbsolutePath(),
+            Long.getLong("vet.fx.budget", 100));
+    private TableView<Metrics.Row> metricsTable;
+    private Scheduler scheduler;
+    private ComboBox<String> vetCombo;
+    private ComboBox<String> roomCombo;
+    private DatePicker scheduleDate;
+    private TableView<Scheduler.Appointment> appointmentsTable;
+    private ListView<Scheduler.WalkIn> walkInList;
+    private VisitHistory history;
+    private TitledPane historyPane;
+    private ComboBox<String> historyRange;
+    private ListView<VisitHistory.Visit> historyList;
 
     public static void main(String[] args) {
         launch(args);
     }
 
+    /**
+     * Rewrites the current snapshot, in whichever format it is, as the text
+     * files or data.bin without starting the UI (see {@link SnapshotConverter}).
+     * The journal is left alone, since the new snapshot covers the same
+     * journal segments.
+     */
+    void convertSnapshot(boolean toBinary) throws IOException {
+        List<String> problems = new ArrayList<>();
+        snapshotWriter.recover(DATA_FILES);
+        LoadedData loaded = readSnapshotNow(problems);
+        problems.forEach(System.err::println);
+
+        long covered = readSnapshotGeneration(problems).journalSegment();
+        DataSnapshot snapshot = DataSnapshot.capture(loaded.owners, loaded.animals, covered);
+        snapshotWriter.write(toBinary ? serializeBinary(snapshot) : serializeText(snapshot));
+        System.out.println("Converted " + loaded.owners.size() + " owners and " + loaded.animals.size()
+                + " animals to " + (toBinary ? BINARY_SNAPSHOT_FILE : "text files"));
+    }
+
+    /**
+     * Loads the snapshot and replays the journal without starting the UI, for
+     * batch jobs such as {@link BulkImport}. Pair with {@link #saveBatch} or
+     * {@link #closeBatch}; either ends the batch and stops this instance's
+     * threads.
+     */
+    LoadedData loadBatch(List<String> problems) throws IOException {
+        snapshotWriter.recover(DATA_FILES);
+        LoadedData loaded = readSnapshotNow(problems);
+        replayJournal(loaded, problems);
+        return loaded;
+    }
+
+    /** Ends a batch started with {@link #loadBatch} without writing anything, as for a dry run. */
+    void closeBatch() throws IOException {
+        try {
+            if (journal.isOpen()) {
+                journal.close();
+            }
+        } finally {
+            shutdownExecutors();
+        }
+    }
+
+    /** Writes a snapshot of the batch result that covers, and retires, the replayed journal. */
+    void saveBatch(LoadedData loaded) throws IOException {
+        try {
+            DataSnapshot snapshot = DataSnapshot.capture(loaded.owners, loaded.animals, journalReplayedThrough);
+            snapshotWriter.write(serialize(snapshot));
+            journal.deleteUpTo(snapshot.journalSegment());
+            if (journal.isOpen()) {
+                journal.close();
+            }
+        } finally {
+            shutdownExecutors();
+        }
+    }
+
+    private void shutdownExecutors() {
+        backgroundExecutor.shutdown();
+        saveExecutor.shutdown();
+        searchExecutor.shutdown();
+        scheduleExecutor.shutdown();
+        historyExecutor.shutdown();
+    }
+
     @Override
     public void start(Stage primaryStage) {
         this.primaryStage = primaryStage;
         this.primaryStage.setTitle("Veterinary Clinic System");
-        loadDataFromFiles();
+        animalSearch = new SearchBox<>(animals, JavaApplication::searchText, "Search animals by name, type, breed or owner");
+        ownerSearch = new SearchBox<>(owners, JavaApplication::searchText, "Search owners by name, ID or phone");
+        try {
+            archive = new PagedStore(Path.of("").toAbsolutePath(), ARCHIVE_STORE, ARCHIVE_CACHED_PAGES);
+        } catch (IOException e) {
+            System.err.println("Failed to open the archive: " + e.getMessage());
+        }
+        repository = openRepository();
+        store = new ModelStore(this::record, Platform::runLater, this::applyChanges);
+        Animal.onChange(animal -> Platform.runLater(() -> animalEdited(animal)));
+        Metrics.startReporting(Path.of("").toAbsolutePath(), Long.getLong("vet.metrics.interval", 60));
+        watchdog.start();
+        scheduler = new Scheduler(Path.of("").toAbsolutePath(), names("vet.vets", "Vet 1,Vet 2,Vet 3"),
+                names("vet.rooms", "Room 1,Room 2"), store::animalById, scheduleExecutor);
+        history = new VisitHistory(Path.of("").toAbsolutePath(), historyExecutor);
+        history.open().exceptionallyAsync(e -> {
+            showAlert("Error", "Failed to open the visit history: " + describe(e));
+            return null;
+        }, Platform::runLater);
+        if (pagedTables) {
+            dataLoaded = openTablePages();
+        } else {
+            dataLoaded = loadData();
+            dataLoaded.thenCompose(ignored -> scheduler.load())
+                    .thenAcceptAsync(this::reportLoadProblems, Platform::runLater);
+        }
         showLoginScreen();
     }
 
-    private void loadDataFromFiles() {
-        animals.clear();
-        owners.clear();
+    @Override
+    public void stop() throws InterruptedException, IOException {
+        backgroundExecutor.shutdown();
+        searchExecutor.shutdown();
+        scheduler.close();
+        scheduleExecutor.shutdown();
+        history.close();
+        historyExecutor.shutdown();
+        saveExecutor.shutdown();
+        saveExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        repository.close();
+        if (archive != null) {
+            archive.close();
+        }
+        if (animalPages != null) {
+            animalPages.close();
+        }
+        if (ownerPages != null) {
+            ownerPages.close();
+        }
+        Metrics.stopReporting();
+    }
 
-        try {
+    /** A comma separated list from a system property, such as the vets and rooms the scheduler books. */
+    private static List<String> names(String property, String defaults) {
+        return Arrays.stream(System.getProperty(property, defaults).split(","))
+                .map(String::trim).filter(name -> !name.isEmpty()).toList();
+    }
 
-            File ownerFile = new File("owners.txt");
-            if (ownerFile.exists()) {
-                try (Scanner ownerScanner = new Scanner(ownerFile)) {
-                    while (ownerScanner.hasNextLine()) {
-                        String[] parts = ownerScanner.nextLine().split(",");
-                        if (parts.length >= 3) {
-                            owners.add(new Owner(parts[0], parts[1], parts[2]));
-                        }
+    private static ExecutorService newExecutor(String name, int threads) {
+        return Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Uses the JDBC database named by -Dvet.jdbc.url when set (its driver must
+     * be on the classpath), and the snapshot files plus journal otherwise.
+     */
+    private VetRepository openRepository() {
+        String url = System.getProperty("vet.jdbc.url");
+        if (url != null && !url.isBlank()) {
+            return new JdbcRepository(url, message -> Platform.runLater(() -> showAlert("Error", message)));
+        }
+        return new FileRepository();
+    }
+
+    /** Loads from the repository into the store off the FX thread; the tables follow through {@link #applyChanges}. */
+    private CompletableFuture<Void> loadData() {
+        List<String> problems = Collections.synchronizedList(new ArrayList<>());
+        long started = System.nanoTime();
+        return repository.load(problems)
+                .thenAccept(loaded -> {
+                    store.load(loaded.owners, loaded.animals);
+                    LOAD_TOTAL.since(started);
+                    LOADED_RECORDS.add(loaded.owners.size() + loaded.animals.size());
+                })
+                .thenRunAsync(() -> reportLoadProblems(problems), Platform::runLater)
+                .exceptionallyAsync(e -> {
+                    showAlert("Error", "Failed to load data: " + describe(e));
+                    LoadedData sample = new LoadedData(new ArrayList<>(), new ArrayList<>());
+                    addSampleData(sample);
+                    store.load(sample.owners, sample.animals);
+                    return null;
+                }, Platform::runLater);
+    }
+
+    /**
+     * Paged mode (-Dvet.tables=paged), for histories too large for the heap:
+     * owners and animals are not loaded into the store. The Animals and
+     * Owners tabs page their rows from two {@link PagedStore}s, so opening
+     * only looks at the index sizes and memory is bounded by the page cache
+     * whatever the number of records. The stores are rebuilt from the
+     * snapshot and journal when {@link #dataStamp()} shows that a normal
+     * session or a batch job changed the data since they were written; that
+     * one start loads everything, as a normal start would. The tables are
+     * read-only, and scheduling and saving are left to the normal mode.
+     * Works on the snapshot files and journal, not on a JDBC database.
+     */
+    private CompletableFuture<Void> openTablePages() {
+        List<String> problems = Collections.synchronizedList(new ArrayList<>());
+        long started = System.nanoTime();
+        return CompletableFuture.runAsync(() -> {
+            Path directory = Path.of("").toAbsolutePath();
+            File stampFile = new File(TABLE_PAGES_STAMP_FILE);
+            try {
+                snapshotWriter.recover(DATA_FILES);
+                if (!stampFile.exists() || !Files.readString(stampFile.toPath()).equals(dataStamp())) {
+                    Files.deleteIfExists(stampFile.toPath());
+                    buildTablePages(directory, problems);
+                    Files.writeString(stampFile.toPath(), dataStamp());
+                }
+                animalPages = new PagedStore(directory, ANIMAL_PAGES, TABLE_CACHED_PAGES);
+                ownerPages = new PagedStore(directory, OWNER_PAGES, TABLE_CACHED_PAGES);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            LOAD_TOTAL.since(started);
+        }, backgroundExecutor)
+                .thenRunAsync(() -> reportLoadProblems(problems), Platform::runLater)
+                .exceptionallyAsync(e -> {
+                    showAlert("Error", "Failed to open the table pages: " + describe(e));
+                    return null;
+                }, Platform::runLater);
+    }
+
+    /**
+     * Name, size and modification time of every snapshot file and journal
+     * segment; any save or batch job changes at least one of them.
+     */
+    private String dataStamp() throws IOException {
+        List<File> files = new ArrayList<>();
+        DATA_FILES.forEach(name -> files.add(new File(name)));
+        for (long segment : journal.segments()) {
+            files.add(journal.segmentFile(segment));
+        }
+        StringBuilder stamp = new StringBuilder();
+        for (File file : files) {
+            if (file.exists()) {
+                stamp.append(file.getName()).append(',').append(file.length()).append(',')
+                        .append(file.lastModified()).append('\n');
+            }
+        }
+        return stamp.toString();
+    }
+
+    /** Loads the data as a batch would and rewrites the table stores from it, in table order. */
+    private void buildTablePages(Path directory, List<String> problems) throws IOException {
+        LoadedData loaded = readSnapshotNow(problems);
+        replayJournal(loaded, problems);
+        LOADED_RECORDS.add(loaded.owners.size() + loaded.animals.size());
+        PagedStore.delete(directory, ANIMAL_PAGES);
+        PagedStore.delete(directory, OWNER_PAGES);
+        try (PagedStore pages = new PagedStore(directory, ANIMAL_PAGES, 1)) {
+            appendRows(pages, loaded.animals, animal -> new String[] {String.valueOf(animal.getId()),
+                    animal.getName(), String.valueOf(animal.getAge()), animal.getType(), animal.toString(),
+                    animal.getOwner() != null ? animal.getOwner().getName() : "None"});
+        }
+        try (PagedStore pages = new PagedStore(directory, OWNER_PAGES, 1)) {
+            appendRows(pages, loaded.owners, owner -> new String[] {owner.getName(), owner.getId(),
+                    owner.getPhoneNumber(), String.valueOf(owner.getPets().size())});
+        }
+    }
+
+    private static <T> void appendRows(PagedStore pages, List<T> items, Function<T, String[]> row)
+            throws IOException {
+        List<String[]> rows = new ArrayList<>(Math.min(items.size(), TABLE_PAGES_BATCH));
+        for (T item : items) {
+            rows.add(row.apply(item));
+            if (rows.size() == TABLE_PAGES_BATCH) {
+                pages.append(rows);
+                rows.clear();
+            }
+        }
+        if (!rows.isEmpty()) {
+            pages.append(rows);
+        }
+    }
+
+    /** Shows an edit made through an animal's setters in its row and in the search index. */
+    private void animalEdited(Animal animal) {
+        fxModel.animalChanged(animal);
+        if (animalSearch != null && store.animalById(animal.getId()) == animal) {
+            animalSearch.update(animal);
+        }
+    }
+
+    /** Passes each store edit to the repository, in the order the store committed them. */
+    private void record(ModelStore.Change change) {
+        switch (change) {
+            case ModelStore.OwnerAdded added -> repository.addOwner(added.owner());
+            case ModelStore.AnimalAdded added -> repository.addAnimal(added.animal());
+            case ModelStore.PetAssigned assigned -> repository.assign(assigned.owner(), assigned.animal());
+            case ModelStore.AnimalRemoved removed -> repository.deleteAnimal(removed.animal());
+            case ModelStore.OwnerRemoved removed -> repository.deleteOwner(removed.owner());
+            case ModelStore.Loaded loaded -> {}
+        }
+    }
+
+    /**
+     * Mirrors a batch of store edits into the observable lists on the FX
+     * thread. Additions and removals are collected and applied with one
+     * addAll and one removeAll per list, so the tables and the search index
+     * see a few bulk changes however many edits arrived.
+     */
+    private void applyChanges(List<ModelStore.Change> batch) {
+        long started = System.nanoTime();
+        TABLE_CHANGES.add(batch.size());
+        List<Owner> addedOwners = new ArrayList<>();
+        List<Animal> addedAnimals = new ArrayList<>();
+        Set<Owner> removedOwners = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Animal> removedAnimals = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Owner> petsChanged = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Animal> ownerChanged = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ModelStore.Change change : batch) {
+            switch (change) {
+                case ModelStore.Loaded loaded -> {
+                    addedOwners.clear();
+                    addedAnimals.clear();
+                    removedOwners.clear();
+                    removedAnimals.clear();
+                    owners.setAll(loaded.owners());
+                    animals.setAll(loaded.animals());
+                }
+                case ModelStore.OwnerAdded added -> addedOwners.add(added.owner());
+                case ModelStore.AnimalAdded added -> addedAnimals.add(added.animal());
+                case ModelStore.PetAssigned assigned -> {
+                    petsChanged.add(assigned.owner());
+                    if (assigned.previous() != null) {
+                        petsChanged.add(assigned.previous());
                     }
+                    ownerChanged.add(assigned.animal());
                 }
+                case ModelStore.AnimalRemoved removed -> {
+                    removedAnimals.add(removed.animal());
+                    if (removed.owner() != null) {
+                        petsChanged.add(removed.owner());
+                    }
+                    ownerChanged.add(removed.animal());
+                }
+                case ModelStore.OwnerRemoved removed -> {
+                    removedOwners.add(removed.owner());
+                    removedAnimals.addAll(removed.pets());
+                    petsChanged.add(removed.owner());
+                    ownerChanged.addAll(removed.pets());
+                }
+            }
+        }
+        owners.addAll(addedOwners);
+        animals.addAll(addedAnimals);
+        if (!removedAnimals.isEmpty()) {
+            animals.removeAll(removedAnimals);
+        }
+        if (!removedOwners.isEmpty()) {
+            owners.removeAll(removedOwners);
+        }
+        petsChanged.forEach(fxModel::petsChanged);
+        for (Animal animal : ownerChanged) {
+            fxModel.ownerChanged(animal);
+            if (animalSearch != null && !removedAnimals.contains(animal)) {
+                animalSearch.update(animal);
+            }
+        }
+        TABLE_UPDATE.since(started);
+    }
+
+    /** The message of the underlying failure, without the wrappers added by futures. */
+    private static String describe(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof UncheckedIOException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e.getMessage();
+    }
+
+    /**
+     * Reads the snapshot that snapshot.gen names as current, whatever format
+     * this session writes. An unreadable data.bin fails the load: the text
+     * files next to it are an older generation, and the journal segments
+     * between the two are already gone.
+     */
+    private CompletableFuture<LoadedData> readSnapshot(List<String> problems) {
+        if (readSnapshotGeneration(problems).binary()) {
+            File binary = new File(BINARY_SNAPSHOT_FILE);
+            try {
+                return CompletableFuture.completedFuture(readBinarySnapshot(binary));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(new IOException("Failed to read " + binary.getName()
+                        + ", which holds the current snapshot: " + e.getMessage(), e));
             }
+        }
 
+        AtomicBoolean legacyFormat = new AtomicBoolean();
+        CompletableFuture<List<Owner>> ownersFuture = CompletableFuture.supplyAsync(
+                () -> readOwners(new File("owners.txt"), problems), backgroundExecutor);
+        CompletableFuture<List<Animal>> animalsFuture = CompletableFuture.supplyAsync(
+                () -> readAnimals(new File("animals.txt"), problems, legacyFormat), backgroundExecutor);
+        return ownersFuture.thenCombineAsync(animalsFuture, (loadedOwners, loadedAnimals) -> {
+            LoadedData loaded = new LoadedData(loadedOwners, loadedAnimals);
+            linkRelations(new File("relations.txt"), loaded, legacyFormat.get(), problems);
+            return loaded;
+        }, backgroundExecutor);
+    }
 
-            File animalFile = new File("animals.txt");
-            if (animalFile.exists()) {
-                try (Scanner animalScanner = new Scanner(animalFile)) {
-                    while (animalScanner.hasNextLine()) {
-                        String[] parts = animalScanner.nextLine().split(",");
-                        if (parts.length >= 4) {
-                            switch (parts[0]) {
-                                case "Dog" -> animals.add(new Dog(parts[1], Integer.parseInt(parts[2]), parts[3]));
-                                case "Cat" -> animals.add(new Cat(parts[1], Integer.parseInt(parts[2]), Boolean.parseBoolean(parts[3])));
-                                case "Bird" -> animals.add(new Bird(parts[1], Integer.parseInt(parts[2]), Boolean.parseBoolean(parts[3])));
-                            }
-                        }
+    /** {@link #readSnapshot} for callers off the load pipeline, with the read failure rethrown as is. */
+    private LoadedData readSnapshotNow(List<String> problems) throws IOException {
+        try {
+            return readSnapshot(problems).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /** Parsed data and its key indexes, used off the FX thread before it is published. */
+    static class LoadedData {
+        final List<Owner> owners;
+        final List<Animal> animals;
+        final LookupIndex<String, Owner> ownersById = new LookupIndex<>(Owner::getId);
+        final LookupIndex<Long, Animal> animalsById = new LookupIndex<>(Animal::getId);
+
+        LoadedData(List<Owner> owners, List<Animal> animals) {
+            this.owners = owners;
+            this.animals = animals;
+            owners.forEach(ownersById::add);
+            animals.forEach(animalsById::add);
+        }
+
+        void addOwner(Owner owner) {
+            owners.add(owner);
+            ownersById.add(owner);
+        }
+
+        void addAnimal(Animal animal) {
+            animals.add(animal);
+            animalsById.add(animal);
+        }
+    }
+
+    private List<Owner> readOwners(File file, List<String> problems) {
+        long started = System.nanoTime();
+        List<Owner> loaded = new ArrayList<>();
+        readRecords(file, problems, record -> {
+            if (record.fieldCount() >= 3) {
+                loaded.add(new Owner(record.field(0), record.field(1), record.field(2)));
+            }
+        });
+        LOAD_OWNERS.since(started);
+        return loaded;
+    }
+
+    /** Reads animals.txt; files written before animals had IDs set {@code legacyFormat}. */
+    private List<Animal> readAnimals(File file, List<String> problems, AtomicBoolean legacyFormat) {
+        long started = System.nanoTime();
+        List<Animal> loaded = new ArrayList<>();
+        readRecords(file, problems, record -> {
+            if (record.fieldCount() >= 4) {
+                if (record.fieldCount() < 5) {
+                    legacyFormat.set(true);
+                }
+                Animal animal = parseAnimal(record, 0);
+                if (animal != null) {
+                    loaded.add(animal);
+                } else {
+                    problems.add(record.location() + ": unknown animal type '" + record.field(0) + "'");
+                }
+            }
+        });
+        LOAD_ANIMALS.since(started);
+        return loaded;
+    }
+
+    /**
+     * Links "ownerId,animalId" lines. Relations saved before animals had IDs
+     * hold "ownerName,petName" and are resolved by first match on the names.
+     */
+    private void linkRelations(File file, LoadedData loaded, boolean legacyFormat, List<String> problems) {
+        long started = System.nanoTime();
+        LookupIndex<String, Owner> ownersByName = new LookupIndex<>(Owner::getName);
+        LookupIndex<String, Animal> animalsByName = new LookupIndex<>(Animal::getName);
+        if (legacyFormat) {
+            loaded.owners.forEach(ownersByName::add);
+            loaded.animals.forEach(animalsByName::add);
+        }
+        readRecords(file, problems, record -> {
+            if (record.fieldCount() >= 2) {
+                Owner owner;
+                Animal pet;
+                if (legacyFormat) {
+                    owner = ownersByName.first(record.field(0));
+                    pet = animalsByName.first(record.field(1));
+                } else {
+                    owner = loaded.ownersById.first(record.field(0));
+                    pet = loaded.animalsById.first(record.longField(1));
+                }
+                if (owner != null && pet != null) {
+                    owner.addPet(pet);
+                }
+            }
+        });
+        LOAD_RELATIONS.since(started);
+    }
+
+    /**
+     * Applies the journal segments newer than the snapshot, then opens a new
+     * segment for this session's edits.
+     */
+    private void replayJournal(LoadedData loaded, List<String> problems) {
+        long started = System.nanoTime();
+        long covered = readSnapshotGeneration(problems).journalSegment();
+        Set<Object> deleted = Collections.newSetFromMap(new IdentityHashMap<>());
+        try {
+            journal.deleteUpTo(covered);
+            journalReplayedThrough = covered;
+            for (long segment : journal.segments()) {
+                readRecords(journal.segmentFile(segment), problems, record -> replayChange(loaded, record, deleted, problems));
+                journalReplayedThrough = segment;
+            }
+            journal.open(covered);
+        } catch (IOException e) {
+            problems.add("Failed to open change journal: " + e.getMessage());
+        }
+        if (!deleted.isEmpty()) {
+            loaded.owners.removeIf(deleted::contains);
+            loaded.animals.removeIf(deleted::contains);
+        }
+        LOAD_JOURNAL.since(started);
+    }
+
+    /** The format of the current snapshot and the last journal segment it covers, as kept in snapshot.gen. */
+    private record SnapshotGeneration(long journalSegment, boolean binary) {}
+
+    /**
+     * Reads "segment,format" from snapshot.gen. Files written before the
+     * format was recorded hold only the segment; for those the snapshot is
+     * whichever of data.bin and the text files was written last.
+     */
+    private SnapshotGeneration readSnapshotGeneration(List<String> problems) {
+        SnapshotGeneration[] generation = {new SnapshotGeneration(0, newerThanText(new File(BINARY_SNAPSHOT_FILE)))};
+        readRecords(new File(SNAPSHOT_GENERATION_FILE), problems, record -> {
+            if (record.fieldCount() >= 2) {
+                generation[0] = new SnapshotGeneration(record.longField(0), record.fieldEquals(1, BINARY_FORMAT));
+            } else if (record.fieldCount() == 1) {
+                generation[0] = new SnapshotGeneration(record.longField(0), generation[0].binary());
+            }
+        });
+        return generation[0];
+    }
+
+    private static boolean newerThanText(File binary) {
+        File text = new File("animals.txt");
+        return binary.exists() && (!text.exists() || binary.lastModified() >= text.lastModified());
+    }
+
+    /**
+     * Applies one journal record, dispatched on its kind. An unknown kind, or
+     * a known one with too few fields, is listed in {@code problems} and
+     * skipped.
+     */
+    private void replayChange(LoadedData loaded, RecordReader record, Set<Object> deleted, List<String> problems) {
+        if (record.fieldCount() == 0) {
+            return;
+        }
+        String kind = record.field(0);
+        int fields = switch (kind) {
+            case "ADD_OWNER" -> 4;
+            case "ADD_ANIMAL" -> 6;
+            case "ASSIGN" -> 3;
+            case "DELETE_ANIMAL", "DELETE_OWNER" -> 2;
+            default -> 0;
+        };
+        if (fields == 0) {
+            problems.add(record.location() + ": unrecognised journal record " + kind);
+            return;
+        }
+        if (record.fieldCount() < fields) {
+            problems.add(record.location() + ": " + kind + " needs " + fields + " fields");
+            return;
+        }
+        switch (kind) {
+            case "ADD_OWNER" -> loaded.addOwner(new Owner(record.field(1), record.field(2), record.field(3)));
+            case "ADD_ANIMAL" -> {
+                Animal animal = parseAnimal(record, 1);
+                if (animal != null) {
+                    loaded.addAnimal(animal);
+                } else {
+                    problems.add(record.location() + ": unknown animal type '" + record.field(1) + "'");
+                }
+            }
+            case "ASSIGN" -> {
+                Owner owner = loaded.ownersById.first(record.field(1));
+                Animal pet = loaded.animalsById.first(record.longField(2));
+                if (owner != null && pet != null) {
+                    owner.addPet(pet);
+                }
+            }
+            case "DELETE_ANIMAL" -> {
+                Animal pet = loaded.animalsById.first(record.longField(1));
+                if (pet != null) {
+                    if (pet.getOwner() != null) {
+                        pet.getOwner().removePet(pet);
                     }
+                    loaded.animalsById.remove(pet);
+                    deleted.add(pet);
                 }
             }
+            default -> {
+                Owner owner = loaded.ownersById.first(record.field(1));
+                if (owner != null) {
+                    for (Animal pet : owner.getPets()) {
+                        loaded.animalsById.remove(pet);
+                        deleted.add(pet);
+                    }
+                    owner.clearPets();
+                    loaded.ownersById.remove(owner);
+                    deleted.add(owner);
+                }
+            }
+        }
+    }
 
+    private void reportLoadProblems(List<String> problems) {
+        LOAD_PROBLEMS.add(problems.size());
+        if (!problems.isEmpty()) {
+            showAlert("Error", "Skipped " + problems.size() + " malformed line(s), first: " + problems.get(0),
+                    problems);
+        }
+    }
 
-            File relationFile = new File("relations.txt");
-            if (relationFile.exists()) {
-                try (Scanner relationScanner = new Scanner(relationFile)) {
-                    while (relationScanner.hasNextLine()) {
-                        String[] parts = relationScanner.nextLine().split(",");
-                        if (parts.length >= 2) {
-                            Owner owner = findOwnerByName(parts[0]);
-                            Animal pet = findAnimalByName(parts[1]);
-                            if (owner != null && pet != null) {
-                                owner.addPet(pet);
-                            }
-                        }
+    private void readRecords(File file, List<String> problems, Consumer<RecordReader> handler) {
+        if (!file.exists()) {
+            return;
+        }
+        BYTES_READ.add(file.length());
+        try (RecordReader reader = new RecordReader(file)) {
+            while (reader.next()) {
+                try {
+                    handler.accept(reader);
+                } catch (NumberFormatException e) {
+                    problems.add(reader.location() + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            problems.add("Failed to read " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /** Parses "Type,name,age,detail[,id]" starting at field {@code first}; animals without an ID get a new one. */
+    static Animal parseAnimal(RecordReader record, int first) {
+        long id = record.fieldCount() > first + 4 ? record.longField(first + 4) : Animal.nextId();
+        if (record.fieldEquals(first, "Dog")) {
+            return new Dog(id, record.field(first + 1), record.intField(first + 2), record.field(first + 3));
+        } else if (record.fieldEquals(first, "Cat")) {
+            return new Cat(id, record.field(first + 1), record.intField(first + 2), record.booleanField(first + 3));
+        } else if (record.fieldEquals(first, "Bird")) {
+            return new Bird(id, record.field(first + 1), record.intField(first + 2), record.booleanField(first + 3));
+        }
+        return null;
+    }
+
+    private LoadedData readBinarySnapshot(File file) throws IOException {
+        long started = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            BYTES_READ.add(channel.size());
+            BinaryFormat.Reader in = new BinaryFormat.Reader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            int version = in.readHeader();
+            if (version < 1 || version > BINARY_FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+
+            int ownerCount = in.readCount();
+            List<Owner> loadedOwners = new ArrayList<>(Math.min(ownerCount, 1 << 20));
+            for (int i = 0; i < ownerCount; i++) {
+                String name = in.readString();
+                String id = in.readString();
+                String phone = in.readString();
+                loadedOwners.add(new Owner(name, id, phone));
+            }
+
+            int animalCount = in.readCount();
+            List<Animal> loadedAnimals = new ArrayList<>(Math.min(animalCount, 1 << 20));
+            for (int i = 0; i < animalCount; i++) {
+                int tag = in.readByte();
+                long id = version >= 2 ? in.readVarint() : Animal.nextId();
+                String name = in.readString();
+                int age = (int) in.readSignedVarint();
+                loadedAnimals.add(switch (tag) {
+                    case TAG_DOG -> new Dog(id, name, age, in.readString());
+                    case TAG_CAT -> new Cat(id, name, age, in.readBoolean());
+                    case TAG_BIRD -> new Bird(id, name, age, in.readBoolean());
+                    default -> throw new IOException("Unknown animal tag " + tag + " in " + file.getName());
+                });
+            }
+
+            for (Owner owner : loadedOwners) {
+                int petCount = in.readCount();
+                for (int i = 0; i < petCount; i++) {
+                    int ref = in.readCount();
+                    if (ref >= loadedAnimals.size()) {
+                        throw new IOException("Relation refers to missing animal " + ref + " in " + file.getName());
                     }
+                    owner.addPet(loadedAnimals.get(ref));
+                }
+            }
+            LOAD_BINARY.since(started);
+            return new LoadedData(loadedOwners, loadedAnimals);
+        }
+    }
+
+    private static void writeBinarySnapshot(DataSnapshot snapshot, OutputStream stream) throws IOException {
+        BinaryFormat.Writer out = new BinaryFormat.Writer(stream);
+        out.writeHeader(BINARY_FORMAT_VERSION);
+
+        out.writeVarint(snapshot.owners().size());
+        for (Owner owner : snapshot.owners()) {
+            out.writeString(owner.getName());
+            out.writeString(owner.getId());
+            out.writeString(owner.getPhoneNumber());
+        }
+
+        Map<Animal, Integer> refs = new IdentityHashMap<>(snapshot.animals().size() * 2);
+        out.writeVarint(snapshot.animals().size());
+        for (Animal animal : snapshot.animals()) {
+            refs.put(animal, refs.size());
+            switch (animal) {
+                case Dog dog -> {
+                    out.writeByte(TAG_DOG);
+                    out.writeVarint(animal.getId());
+                    out.writeString(dog.getName());
+                    out.writeSignedVarint(dog.getAge());
+                    out.writeString(dog.getBreed());
+                }
+                case Cat cat -> {
+                    out.writeByte(TAG_CAT);
+                    out.writeVarint(animal.getId());
+                    out.writeString(cat.getName());
+                    out.writeSignedVarint(cat.getAge());
+                    out.writeBoolean(cat.isIndoor());
                 }
+                case Bird bird -> {
+                    out.writeByte(TAG_BIRD);
+                    out.writeVarint(animal.getId());
+                    out.writeString(bird.getName());
+                    out.writeSignedVarint(bird.getAge());
+                    out.writeBoolean(bird.isCanFly());
+                }
+                default -> throw new IllegalArgumentException("Unknown animal type: " + animal.getType());
             }
+        }
 
-            if (owners.isEmpty() && animals.isEmpty()) {
-                initializeSampleData();
+        for (List<Animal> pets : snapshot.petsByOwner()) {
+            List<Integer> petRefs = new ArrayList<>(pets.size());
+            for (Animal pet : pets) {
+                Integer ref = refs.get(pet);
+                if (ref != null) {
+                    petRefs.add(ref);
+                }
+            }
+            out.writeVarint(petRefs.size());
+            for (int ref : petRefs) {
+                out.writeVarint(ref);
             }
-        } catch (FileNotFoundException e) {
-            System.out.println("No saved data found, starting with sample data");
-            initializeSampleData();
-        } catch (NumberFormatException e) {
-            showAlert("Error", "Failed to load data: " + e.getMessage());
-            initializeSampleData();
         }
+        out.flush();
     }
 
-    private void initializeSampleData() {
-        animals.add(new Dog("Buddy", 3, "Golden Retriever"));
-        animals.add(new Cat("Miso", 2, true));
-        animals.add(new Bird("Twitter", 1, false));
+    /** The "Type,name,age,detail,id" record read back by {@link #parseAnimal}, with free text fields escaped. */
+    private static String formatAnimal(Animal animal) {
+        String name = RecordReader.escape(animal.getName());
+        return switch (animal) {
+            case Dog dog -> "Dog," + name + "," + dog.getAge() + "," + RecordReader.escape(dog.getBreed())
+                    + "," + dog.getId();
+            case Cat cat -> "Cat," + name + "," + cat.getAge() + "," + cat.isIndoor() + "," + cat.getId();
+            case Bird bird -> "Bird," + name + "," + bird.getAge() + "," + bird.isCanFly() + "," + bird.getId();
+            default -> throw new IllegalArgumentException("Unknown animal type: " + animal.getType());
+        };
+    }
+
+    /** The "name,id,phone" record of owners.txt and the journal, with every field escaped. */
+    private static String formatOwner(Owner owner) {
+        return RecordReader.escape(owner.getName()) + "," + RecordReader.escape(owner.getId()) + ","
+                + RecordReader.escape(owner.getPhoneNumber());
+    }
+
+    static void addSampleData(LoadedData loaded) {
+        Animal buddy = new Dog("Buddy", 3, "Golden Retriever");
+        Animal miso = new Cat("Miso", 2, true);
+        Animal twitter = new Bird("Twitter", 1, false);
+        loaded.addAnimal(buddy);
+        loaded.addAnimal(miso);
+        loaded.addAnimal(twitter);
         
         Owner owner1 = new Owner("John", "1", "0501111111");
         Owner owner2 = new Owner("Sarah", "2", "0502222222");
         
-        owner1.addPet(animals.get(0)); 
-        owner2.addPet(animals.get(1)); 
-        owner2.addPet(animals.get(2)); 
+        owner1.addPet(buddy); 
+        owner2.addPet(miso); 
+        owner2.addPet(twitter); 
         
-        owners.addAll(owner1, owner2);
+        loaded.addOwner(owner1);
+        loaded.addOwner(owner2);
     }
 
     private void showLoginScreen() {
@@ -132,7 +937,20 @@ public class JavaApplication extends Application {
         grid.add(loginButton, 1, 2);
         grid.add(statusLabel, 1, 3);
 
-        loginButton.setOnAction(e -> {
+        if (!dataLoaded.isDone()) {
+            ProgressIndicator loadingIndicator = new ProgressIndicator();
+            loadingIndicator.setPrefSize(20, 20);
+            loginButton.setDisable(true);
+            statusLabel.setText("Loading data...");
+            statusLabel.setGraphic(loadingIndicator);
+            dataLoaded.whenCompleteAsync((ignored, error) -> {
+                loginButton.setDisable(false);
+                statusLabel.setText("");
+                statusLabel.setGraphic(null);
+            }, Platform::runLater);
+        }
+
+        onAction(loginButton, () -> {
             if (authenticate(usernameField.getText(), passwordField.getText())) {
                 showMainScreen();
             } else {
@@ -152,23 +970,61 @@ public class JavaApplication extends Application {
         primaryStage.show();
     }
 
+    /** Shows the dialog and waits for it, through {@link FxWatchdog#nestedLoop}. */
+    private <T> Optional<T> showAndWait(Dialog<T> dialog) {
+        return watchdog.nestedLoop(dialog::showAndWait);
+    }
+
+    /** Sets the button's handler; FX thread stalls while it runs are logged under the button's label. */
+    private void onAction(Button button, Runnable handler) {
+        button.setOnAction(watchdog.track(button.getText(), e -> handler.run()));
+    }
+
     private void showMainScreen() {
         TabPane tabPane = new TabPane();
         
 
-        Tab animalsTab = new Tab("Animals", createAnimalsTab());
+        Tab animalsTab = new Tab("Animals", pagedTables
+                ? createPagedTab("Animals (read-only)", animalPages, ANIMAL_COLUMNS) : createAnimalsTab());
         animalsTab.setClosable(false);
         
 
-        Tab ownersTab = new Tab("Owners", createOwnersTab());
+        Tab ownersTab = new Tab("Owners", pagedTables
+                ? createPagedTab("Owners (read-only)", ownerPages, OWNER_COLUMNS) : createOwnersTab());
         ownersTab.setClosable(false);
         
-        tabPane.getTabs().addAll(animalsTab, ownersTab);
+        Tab archiveTab = new Tab("Archive", createArchiveTab());
+        archiveTab.setClosable(false);
+        
+        Tab scheduleTab = new Tab("Schedule", pagedTables
+                ? new VBox(20, new Label("Scheduling needs the live data; start without -Dvet.tables=paged"))
+                : createScheduleTab());
+        scheduleTab.setClosable(false);
+        scheduleTab.selectedProperty().addListener((obs, wasSelected, selected) -> {
+            if (selected && !pagedTables) {
+                refreshSchedule();
+            }
+        });
+
+        Tab diagnosticsTab = new Tab("Diagnostics", createDiagnosticsTab());
+        diagnosticsTab.setClosable(false);
+        Timeline metricsRefresh = new Timeline(new KeyFrame(Duration.seconds(2), e -> refreshMetrics()));
+        metricsRefresh.setCycleCount(Animation.INDEFINITE);
+        diagnosticsTab.selectedProperty().addListener((obs, wasSelected, selected) -> {
+            if (selected) {
+                refreshMetrics();
+                metricsRefresh.play();
+            } else {
+                metricsRefresh.stop();
+            }
+        });
+
+        tabPane.getTabs().addAll(animalsTab, ownersTab, archiveTab, scheduleTab, diagnosticsTab);
         
         Button saveBtn = new Button("Save Data");
-        saveBtn.setOnAction(e -> saveDataToFiles());
+        onAction(saveBtn, () -> saveDataToFiles());
         
-        VBox layout = new VBox(20, tabPane, saveBtn);
+        VBox layout = pagedTables ? new VBox(20, tabPane) : new VBox(20, tabPane, saveBtn);
         layout.setPadding(new Insets(20));
         layout.setStyle("-fx-background-color: #f5f5f5;");
 
@@ -177,93 +1033,186 @@ public class JavaApplication extends Application {
     }
 
     private VBox createAnimalsTab() {
-        TableView<Animal> animalsTable = createAnimalsTable();
+        animalsTable = createAnimalsTable();
         HBox buttonsBox = createAnimalButtons();
-        return new VBox(20, animalsTable, buttonsBox);
+        return new VBox(20, animalSearch.field, animalsTable, buttonsBox, createHistoryPane());
+    }
+
+    /**
+     * Visit history of the selected animal. Collapsed at first, and only
+     * queried while expanded, so browsing the table never touches the
+     * history files.
+     */
+    private TitledPane createHistoryPane() {
+        historyRange = new ComboBox<>(FXCollections.observableArrayList("Last 12 months", "Last 5 years", "All"));
+        historyRange.getSelectionModel().selectFirst();
+        historyRange.valueProperty().addListener((obs, oldVal, newVal) -> refreshHistory());
+
+        historyList = new ListView<>();
+        historyList.setPrefHeight(150);
+        historyList.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(VisitHistory.Visit visit, boolean empty) {
+                super.updateItem(visit, empty);
+                setText(empty || visit == null ? null : visit.time().toLocalDate() + " " + visit.time().toLocalTime()
+                        + "  " + visit.kind() + ": " + visit.description()
+                        + (visit.vet() == null || visit.vet().isEmpty() ? "" : " (" + visit.vet() + ")"));
+            }
+        });
+
+        Button addRecordBtn = new Button("Add Record");
+        addRecordBtn.setStyle("-fx-background-color: #4CAF50; -fx-text-fill: white;");
+        onAction(addRecordBtn, this::showAddVisitDialog);
+
+        historyPane = new TitledPane("Visit History",
+                new VBox(10, new HBox(10, historyRange, addRecordBtn), historyList));
+        historyPane.setExpanded(false);
+        historyPane.expandedProperty().addListener((obs, wasExpanded, expanded) -> refreshHistory());
+        animalsTable.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> refreshHistory());
+        return historyPane;
+    }
+
+    private void refreshHistory() {
+        Animal animal = getSelectedAnimal();
+        if (!historyPane.isExpanded() || animal == null) {
+            historyList.getItems().clear();
+            historyList.setPlaceholder(new Label(animal == null ? "Select an animal" : ""));
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime from = switch (historyRange.getValue()) {
+            case "Last 12 months" -> now.minusMonths(12);
+            case "Last 5 years" -> now.minusYears(5);
+            default -> LocalDateTime.MIN;
+        };
+        historyList.setPlaceholder(new Label("Loading..."));
+        history.visits(animal.getId(), from, LocalDateTime.MAX).whenCompleteAsync((visits, e) -> {
+            if (animal != getSelectedAnimal()) {
+                return;
+            }
+            if (e != null) {
+                historyList.getItems().clear();
+                historyList.setPlaceholder(new Label("Failed to read the history: " + describe(e)));
+                return;
+            }
+            List<VisitHistory.Visit> newestFirst = new ArrayList<>(visits);
+            Collections.reverse(newestFirst);
+            historyList.getItems().setAll(newestFirst);
+            historyList.setPlaceholder(new Label("No visits recorded"));
+        }, Platform::runLater);
+    }
+
+    private void showAddVisitDialog() {
+        Animal selectedAnimal = getSelectedAnimal();
+        if (selectedAnimal == null) {
+            showAlert("Warning", "Please select an animal first");
+            return;
+        }
+
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.setTitle("Add Visit Record");
+
+        ComboBox<String> kindCombo = new ComboBox<>(FXCollections.observableArrayList("Visit", "Treatment"));
+        kindCombo.getSelectionModel().selectFirst();
+        TextField descriptionField = new TextField();
+        descriptionField.setPromptText("Description");
+        ComboBox<String> vetChoice = new ComboBox<>(FXCollections.observableArrayList(scheduler.vets()));
+        vetChoice.setPromptText("Vet");
+
+        dialog.getDialogPane().setContent(new VBox(10,
+            new Label("Animal: " + selectedAnimal.getName()),
+            kindCombo,
+            descriptionField,
+            vetChoice
+        ));
+        dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+
+        showAndWait(dialog).filter(ButtonType.OK::equals).ifPresent(ok -> {
+            if (descriptionField.getText().isBlank()) {
+                showAlert("Error", "Please enter a description");
+                return;
+            }
+            recordVisit(new VisitHistory.Visit(selectedAnimal.getId(), LocalDateTime.now(), kindCombo.getValue(),
+                    descriptionField.getText().trim(), vetChoice.getValue()));
+        });
+    }
+
+    private void recordVisit(VisitHistory.Visit visit) {
+        history.record(visit).whenCompleteAsync((ignored, e) -> {
+            if (e != null) {
+                showAlert("Error", "Failed to save the visit: " + describe(e));
+            } else {
+                refreshHistory();
+            }
+        }, Platform::runLater);
     }
 
     private TableView<Animal> createAnimalsTable() {
         TableView<Animal> table = new TableView<>();
         
-        TableColumn<Animal, String> nameCol = new TableColumn<>("Name");
-        nameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
-        
-        TableColumn<Animal, Integer> ageCol = new TableColumn<>("Age");
-        ageCol.setCellValueFactory(new PropertyValueFactory<>("age"));
-        
-        TableColumn<Animal, String> typeCol = new TableColumn<>("Type");
-        typeCol.setCellValueFactory(new PropertyValueFactory<>("type"));
-        
-        TableColumn<Animal, String> detailsCol = new TableColumn<>("Details");
-        detailsCol.setCellValueFactory(new PropertyValueFactory<>("details"));
-        
-        TableColumn<Animal, String> ownerCol = new TableColumn<>("Owner");
-        ownerCol.setCellValueFactory(cellData -> {
-            Owner owner = findOwnerByPet(cellData.getValue());
-            return new SimpleStringProperty(owner != null ? owner.getName() : "None");
-        });
-
-        table.setItems(animals);
-        table.getColumns().addAll(nameCol, ageCol, typeCol, detailsCol, ownerCol);
+        TableColumn<Animal, Long> idCol = Columns.of("ID", fxModel::id);
+        TableColumn<Animal, String> nameCol = Columns.of("Name", fxModel::name);
+        TableColumn<Animal, Integer> ageCol = Columns.of("Age", fxModel::age);
+        TableColumn<Animal, String> typeCol = Columns.of("Type", fxModel::type);
+        TableColumn<Animal, String> detailsCol = Columns.of("Details", fxModel::details);
+        TableColumn<Animal, String> ownerCol = Columns.of("Owner", fxModel::ownerName);
+
+        animalSearch.bind(table);
+        table.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        table.getColumns().addAll(List.of(idCol, nameCol, ageCol, typeCol, detailsCol, ownerCol));
         return table;
     }
 
     private HBox createAnimalButtons() {
         Button addDogBtn = new Button("Add Dog");
         addDogBtn.setStyle("-fx-background-color: #4CAF50; -fx-text-fill: white;");
-        addDogBtn.setOnAction(e -> showAddAnimalDialog("Dog"));
+        onAction(addDogBtn, () -> showAddAnimalDialog("Dog"));
         
         Button addCatBtn = new Button("Add Cat");
         addCatBtn.setStyle("-fx-background-color: #4CAF50; -fx-text-fill: white;");
-        addCatBtn.setOnAction(e -> showAddAnimalDialog("Cat"));
+        onAction(addCatBtn, () -> showAddAnimalDialog("Cat"));
         
         Button addBirdBtn = new Button("Add Bird");
         addBirdBtn.setStyle("-fx-background-color: #4CAF50; -fx-text-fill: white;");
-        addBirdBtn.setOnAction(e -> showAddAnimalDialog("Bird"));
+        onAction(addBirdBtn, () -> showAddAnimalDialog("Bird"));
         
         Button assignOwnerBtn = new Button("Assign Owner");
         assignOwnerBtn.setStyle("-fx-background-color: #4CAF50; -fx-text-fill: white;");
-        assignOwnerBtn.setOnAction(e -> assignOwnerToAnimal());
+        onAction(assignOwnerBtn, () -> assignOwnerToAnimal());
+        
+        Button archiveBtn = new Button("Archive");
+        archiveBtn.setStyle("-fx-background-color: #607D8B; -fx-text-fill: white;");
+        onAction(archiveBtn, () -> archiveSelectedAnimals());
         
         Button deleteBtn = new Button("Delete");
         deleteBtn.setStyle("-fx-background-color: #F44336; -fx-text-fill: white;");
-        deleteBtn.setOnAction(e -> deleteSelectedAnimal());
+        onAction(deleteBtn, () -> deleteSelectedAnimal());
         
-        return new HBox(10, addDogBtn, addCatBtn, addBirdBtn, assignOwnerBtn, deleteBtn);
+        return new HBox(10, addDogBtn, addCatBtn, addBirdBtn, assignOwnerBtn, archiveBtn, deleteBtn);
     }
 
     private VBox createOwnersTab() {
-        TableView<Owner> ownersTable = new TableView<>();
-        ownersTable.setItems(owners);
-        
-        TableColumn<Owner, String> nameCol = new TableColumn<>("Name");
-        nameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
-        
-        TableColumn<Owner, String> idCol = new TableColumn<>("ID");
-        idCol.setCellValueFactory(new PropertyValueFactory<>("id"));
+        ownersTable = new TableView<>();
+        ownerSearch.bind(ownersTable);
+        ownersTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
         
-        TableColumn<Owner, String> phoneCol = new TableColumn<>("Phone");
-        phoneCol.setCellValueFactory(new PropertyValueFactory<>("phoneNumber"));
+        TableColumn<Owner, String> nameCol = Columns.fixed("Name", Owner::getName);
+        TableColumn<Owner, String> idCol = Columns.fixed("ID", Owner::getId);
+        TableColumn<Owner, String> phoneCol = Columns.fixed("Phone", Owner::getPhoneNumber);
+        TableColumn<Owner, Number> petsCountCol = Columns.of("Pets Count", fxModel::petCount);
         
-        TableColumn<Owner, Integer> petsCountCol = new TableColumn<>("Pets Count");
-        petsCountCol.setCellValueFactory(cellData -> 
-            new SimpleIntegerProperty(cellData.getValue().getPets().size()).asObject());
-        
-        ownersTable.getColumns().addAll(nameCol, idCol, phoneCol, petsCountCol);
+        ownersTable.getColumns().addAll(List.of(nameCol, idCol, phoneCol, petsCountCol));
         
         TableView<Animal> petsTable = new TableView<>();
         
-        TableColumn<Animal, String> petNameCol = new TableColumn<>("Pet Name");
-        petNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
-        
-        TableColumn<Animal, String> petTypeCol = new TableColumn<>("Pet Type");
-        petTypeCol.setCellValueFactory(new PropertyValueFactory<>("type"));
+        TableColumn<Animal, String> petNameCol = Columns.of("Pet Name", fxModel::name);
+        TableColumn<Animal, String> petTypeCol = Columns.of("Pet Type", fxModel::type);
         
-        petsTable.getColumns().addAll(petNameCol, petTypeCol);
+        petsTable.getColumns().addAll(List.of(petNameCol, petTypeCol));
         
         ownersTable.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> {
             if (newVal != null) {
-                petsTable.setItems(newVal.getPets());
+                petsTable.setItems(fxModel.pets(newVal));
             } else {
                 petsTable.setItems(FXCollections.emptyObservableList());
             }
@@ -271,19 +1220,16 @@ public class JavaApplication extends Application {
         
         Button addOwnerBtn = new Button("Add Owner");
         addOwnerBtn.setStyle("-fx-background-color: #4CAF50; -fx-text-fill: white;");
-        addOwnerBtn.setOnAction(e -> showAddOwnerDialog());
+        onAction(addOwnerBtn, () -> showAddOwnerDialog());
         
         Button deleteOwnerBtn = new Button("Delete Owner");
         deleteOwnerBtn.setStyle("-fx-background-color: #F44336; -fx-text-fill: white;");
-        deleteOwnerBtn.setOnAction(e -> {
-            deleteSelectedOwner();
-            ownersTable.refresh();
-            petsTable.setItems(FXCollections.emptyObservableList());
-        });
+        onAction(deleteOwnerBtn, () -> deleteSelectedOwner());
         
         VBox layout = new VBox(20);
         layout.getChildren().addAll(
             new Label("Owners List"),
+            ownerSearch.field,
             ownersTable,
             new Label("Selected Owner's Pets"),
             petsTable,
@@ -293,6 +1239,426 @@ public class JavaApplication extends Application {
         return layout;
     }
 
+    /**
+     * Read-only view of the archive. By default rows are fetched from disk
+     * in the background as the table scrolls to them, so the archive's size
+     * does not affect memory or startup and scrolling never waits for the disk.
+     * Live animals and owners are paged the same way only in the read-only
+     * paged mode (see {@link #openTablePages()}); otherwise archiving is how
+     * a clinic keeps memory and startup time down.
+     */
+    private VBox createArchiveTab() {
+        TableView<?> table = compactArchive ? createCompactArchiveTable() : createPagedArchiveTable();
+        return new VBox(20, new Label("Archived Animals"), table);
+    }
+
+    /**
+     * One vet's appointments for a day, plus the walk-in queue. Bookings are
+     * for the animal selected in the Animals tab; the scheduler does the work
+     * on its own thread and the view is refreshed when it answers.
+     */
+    private VBox createScheduleTab() {
+        vetCombo = new ComboBox<>(FXCollections.observableArrayList(scheduler.vets()));
+        vetCombo.getSelectionModel().selectFirst();
+        vetCombo.setOnAction(e -> refreshSchedule());
+        roomCombo = new ComboBox<>(FXCollections.observableArrayList(scheduler.rooms()));
+        roomCombo.getSelectionModel().selectFirst();
+        scheduleDate = new DatePicker(LocalDate.now());
+        scheduleDate.setOnAction(e -> refreshSchedule());
+
+        appointmentsTable = new TableView<>();
+        appointmentsTable.setPlaceholder(new Label("No appointments"));
+        appointmentsTable.getColumns().addAll(List.of(
+                Columns.fixed("Start", a -> a.start().toLocalTime()),
+                Columns.fixed("End", a -> a.end().toLocalTime()),
+                Columns.fixed("Room", Scheduler.Appointment::room),
+                Columns.fixed("Patient", Scheduler.Appointment::patient),
+                Columns.fixed("Service", Scheduler.Appointment::service)));
+
+        walkInList = new ListView<>();
+        walkInList.setPrefHeight(120);
+        walkInList.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(Scheduler.WalkIn walkIn, boolean empty) {
+                super.updateItem(walkIn, empty);
+                setText(empty || walkIn == null ? null
+                        : walkIn.priority() + ": " + walkIn.patient() + " (" + walkIn.service() + ")");
+            }
+        });
+
+        Button bookBtn = new Button("Book Appointment");
+        bookBtn.setStyle("-fx-background-color: #4CAF50; -fx-text-fill: white;");
+        onAction(bookBtn, this::showBookAppointmentDialog);
+
+        Button checkInBtn = new Button("Check In");
+        checkInBtn.setStyle("-fx-background-color: #4CAF50; -fx-text-fill: white;");
+        onAction(checkInBtn, this::checkInSelectedAppointment);
+
+        Button cancelBtn = new Button("Cancel Appointment");
+        cancelBtn.setStyle("-fx-background-color: #F44336; -fx-text-fill: white;");
+        onAction(cancelBtn, this::cancelSelectedAppointment);
+
+        Button invoiceBtn = new Button("Invoice Month");
+        invoiceBtn.setStyle("-fx-background-color: #607D8B; -fx-text-fill: white;");
+        onAction(invoiceBtn, this::invoiceMonth);
+
+        Button walkInBtn = new Button("Add Walk-in");
+        walkInBtn.setStyle("-fx-background-color: #4CAF50; -fx-text-fill: white;");
+        onAction(walkInBtn, this::showWalkInDialog);
+
+        Button nextBtn = new Button("Next Walk-in");
+        nextBtn.setStyle("-fx-background-color: #607D8B; -fx-text-fill: white;");
+        onAction(nextBtn, this::serveNextWalkIn);
+
+        return new VBox(20,
+                new HBox(10, new Label("Vet:"), vetCombo, new Label("Room:"), roomCombo, new Label("Day:"), scheduleDate),
+                appointmentsTable,
+                new HBox(10, bookBtn, checkInBtn, cancelBtn, invoiceBtn),
+                new Label("Walk-ins"),
+                walkInList,
+                new HBox(10, walkInBtn, nextBtn));
+    }
+
+    private void refreshSchedule() {
+        String vet = vetCombo.getValue();
+        LocalDate date = scheduleDate.getValue();
+        if (vet == null || date == null) {
+            return;
+        }
+        scheduler.day(vet, date).thenAcceptAsync(day -> {
+            if (vet.equals(vetCombo.getValue()) && date.equals(scheduleDate.getValue())) {
+                appointmentsTable.getItems().setAll(day);
+            }
+        }, Platform::runLater);
+        scheduler.waiting().thenAcceptAsync(walkInList.getItems()::setAll, Platform::runLater);
+    }
+
+    /** Shows the outcome of a scheduler call on the FX thread, then refreshes the schedule view. */
+    private <T> void afterScheduling(CompletableFuture<T> result, Function<T, String> success) {
+        result.whenCompleteAsync((value, e) -> {
+            if (e != null) {
+                showAlert("Error", describe(e));
+            } else {
+                String message = success.apply(value);
+                if (message != null) {
+                    showAlert("Success", message);
+                }
+            }
+            refreshSchedule();
+        }, Platform::runLater);
+    }
+
+    private void showBookAppointmentDialog() {
+        Animal selectedAnimal = getSelectedAnimal();
+        if (selectedAnimal == null) {
+            showAlert("Warning", "Please select an animal in the Animals tab first");
+            return;
+        }
+        String vet = vetCombo.getValue();
+        String room = roomCombo.getValue();
+
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.setTitle("Book Appointment");
+
+        ComboBox<String> serviceCombo = new ComboBox<>(FXCollections.observableArrayList(Scheduler.SERVICES.keySet()));
+        serviceCombo.getSelectionModel().selectFirst();
+        DatePicker datePicker = new DatePicker(scheduleDate.getValue());
+        TextField timeField = new TextField();
+        timeField.setPromptText("HH:MM");
+        Button findSlotBtn = new Button("Find Slot");
+        findSlotBtn.setOnAction(e -> {
+            if (datePicker.getValue() == null) {
+                showAlert("Warning", "Please select a day first");
+                return;
+            }
+            LocalDateTime from = datePicker.getValue().atTime(parseTime(timeField.getText(), Scheduler.OPENS));
+            scheduler.findSlot(serviceCombo.getValue(), vet, room, from).whenCompleteAsync((slot, error) -> {
+                if (error != null) {
+                    showAlert("Error", describe(error));
+                } else {
+                    datePicker.setValue(slot.toLocalDate());
+                    timeField.setText(slot.toLocalTime().toString());
+                }
+            }, Platform::runLater);
+        });
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new Insets(20));
+        grid.add(new Label("Animal: " + selectedAnimal.getName() + " with " + vet + " in " + room), 0, 0, 3, 1);
+        grid.add(new Label("Service:"), 0, 1);
+        grid.add(serviceCombo, 1, 1);
+        grid.add(new Label("Day:"), 0, 2);
+        grid.add(datePicker, 1, 2);
+        grid.add(new Label("Time:"), 0, 3);
+        grid.add(timeField, 1, 3);
+        grid.add(findSlotBtn, 2, 3);
+
+        dialog.getDialogPane().setContent(grid);
+        dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+
+        showAndWait(dialog).filter(ButtonType.OK::equals).ifPresent(ok -> {
+            LocalTime time = parseTime(timeField.getText(), null);
+            if (time == null || datePicker.getValue() == null) {
+                showAlert("Error", "Please enter the day and the time as HH:MM, or use Find Slot");
+                return;
+            }
+            afterScheduling(scheduler.book(selectedAnimal, serviceCombo.getValue(), vet, room,
+                            datePicker.getValue().atTime(time)),
+                    appointment -> "Booked " + appointment.service() + " for " + appointment.patient() + " at "
+                            + appointment.start().toLocalTime());
+        });
+    }
+
+    private static LocalTime parseTime(String text, LocalTime fallback) {
+        try {
+            return LocalTime.parse(text.trim());
+        } catch (DateTimeParseException e) {
+            return fallback;
+        }
+    }
+
+    private void checkInSelectedAppointment() {
+        Scheduler.Appointment appointment = appointmentsTable.getSelectionModel().getSelectedItem();
+        if (appointment == null) {
+            showAlert("Warning", "Please select an appointment first");
+            return;
+        }
+        afterScheduling(scheduler.checkIn(appointment), provided -> {
+            if (provided == null) {
+                return appointment.patient() + " is no longer registered";
+            }
+            recordVisit(new VisitHistory.Visit(appointment.animalId(), LocalDateTime.now(), "Visit",
+                    provided, appointment.vet()));
+            return appointment.patient() + " checked in for " + appointment.service();
+        });
+    }
+
+    private void cancelSelectedAppointment() {
+        Scheduler.Appointment appointment = appointmentsTable.getSelectionModel().getSelectedItem();
+        if (appointment == null) {
+            showAlert("Warning", "Please select an appointment first");
+            return;
+        }
+        afterScheduling(scheduler.cancel(appointment), ignored -> "Appointment cancelled");
+    }
+
+    private void showWalkInDialog() {
+        Animal selectedAnimal = getSelectedAnimal();
+        if (selectedAnimal == null) {
+            showAlert("Warning", "Please select an animal in the Animals tab first");
+            return;
+        }
+
+        Dialog<Scheduler.Priority> dialog = new Dialog<>();
+        dialog.setTitle("Add Walk-in");
+
+        ComboBox<String> serviceCombo = new ComboBox<>(FXCollections.observableArrayList(Scheduler.SERVICES.keySet()));
+        serviceCombo.getSelectionModel().selectFirst();
+        ComboBox<Scheduler.Priority> priorityCombo = new ComboBox<>(
+                FXCollections.observableArrayList(Scheduler.Priority.values()));
+        priorityCombo.setValue(Scheduler.Priority.ROUTINE);
+
+        dialog.getDialogPane().setContent(new VBox(10,
+            new Label("Animal: " + selectedAnimal.getName()),
+            new Label("Service:"),
+            serviceCombo,
+            new Label("Priority:"),
+            priorityCombo
+        ));
+        dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+        dialog.setResultConverter(buttonType -> buttonType == ButtonType.OK ? priorityCombo.getValue() : null);
+
+        showAndWait(dialog).ifPresent(priority -> afterScheduling(
+                scheduler.walkIn(selectedAnimal, serviceCombo.getValue(), priority), ignored -> null));
+    }
+
+    /**
+     * Bills the visits, the appointments that were checked in, in the month
+     * of the selected day and writes the invoices to invoices-YYYY-MM.csv.
+     * Pricing and writing happen on a background thread.
+     */
+    private void invoiceMonth() {
+        if (scheduleDate.getValue() == null) {
+            showAlert("Warning", "Please select a day in the month to invoice");
+            return;
+        }
+        LocalDate first = scheduleDate.getValue().withDayOfMonth(1);
+        Path file = Path.of("").toAbsolutePath().resolve("invoices-" + first.toString().substring(0, 7) + ".csv");
+        List<String> skipped = new ArrayList<>();
+        scheduler.visits(first.atStartOfDay(), first.plusMonths(1).atStartOfDay())
+                .thenApplyAsync(visits -> {
+                    List<Pricing.Invoice> invoices = Pricing.current().invoices(visits, store::animalById,
+                            skipped);
+                    try {
+                        Pricing.writeCsv(invoices, file);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return invoices;
+                }, backgroundExecutor)
+                .whenCompleteAsync((invoices, e) -> {
+                    if (e != null) {
+                        showAlert("Error", "Failed to write invoices: " + describe(e));
+                        return;
+                    }
+                    long total = invoices.stream().mapToLong(Pricing.Invoice::total).sum();
+                    showAlert("Success", invoices.size() + " invoice(s) totalling " + Pricing.formatAmount(total)
+                            + " SAR written to " + file.getFileName()
+                            + (skipped.isEmpty() ? "" : "; " + skipped.size() + " visit(s) could not be billed,"
+                            + " see the details"), skipped);
+                }, Platform::runLater);
+    }
+
+    private void serveNextWalkIn() {
+        afterScheduling(scheduler.serveNextWalkIn(vetCombo.getValue(), roomCombo.getValue(), LocalDateTime.now()),
+                appointment -> appointment == null ? "Nobody is waiting"
+                        : appointment.patient() + " booked with " + appointment.vet() + " at "
+                        + appointment.start().toLocalDate() + " " + appointment.start().toLocalTime());
+    }
+
+    /**
+     * The values in {@link Metrics}, refreshed every two seconds while the tab
+     * is showing. Times are in milliseconds and cumulative since start-up.
+     */
+    private VBox createDiagnosticsTab() {
+        metricsTable = new TableView<>();
+        metricsTable.setFixedCellSize(24);
+        metricsTable.getColumns().addAll(List.of(
+                Columns.fixed("Metric", Metrics.Row::name),
+                Columns.fixed("Count", Metrics.Row::count),
+                Columns.fixed("Mean", row -> formatMillis(row, row.meanMillis())),
+                Columns.fixed("p50", row -> formatMillis(row, row.p50Millis())),
+                Columns.fixed("p99", row -> formatMillis(row, row.p99Millis())),
+                Columns.fixed("Max", row -> formatMillis(row, row.maxMillis()))));
+        metricsTable.getColumns().get(0).setPrefWidth(220);
+        Label source = new Label("Also written to " + Metrics.FILE + " and published over JMX as "
+                + Metrics.OBJECT_NAME + "; FX thread stalls are logged with stack samples to " + FxWatchdog.FILE);
+        return new VBox(20, new Label("Diagnostics"), metricsTable, source);
+    }
+
+    private static String formatMillis(Metrics.Row row, double millis) {
+        return row.timer() ? String.format("%.3f", millis) : "";
+    }
+
+    private void refreshMetrics() {
+        metricsTable.getItems().setAll(Metrics.snapshot());
+    }
+
+    private TableView<String[]> createPagedArchiveTable() {
+        TableView<String[]> table = createPagedTable(ARCHIVE_COLUMNS);
+        if (archive != null) {
+            archivedAnimals = new PagedRows(archive, backgroundExecutor);
+            table.setItems(archivedAnimals);
+        } else {
+            table.setPlaceholder(new Label("The archive could not be opened"));
+        }
+        return table;
+    }
+
+    /** An Animals or Owners tab in paged mode (see {@link #openTablePages()}). */
+    private VBox createPagedTab(String title, PagedStore pages, List<String> columns) {
+        TableView<String[]> table = createPagedTable(columns);
+        if (pages != null) {
+            table.setItems(new PagedRows(pages, backgroundExecutor));
+        } else {
+            table.setPlaceholder(new Label("The table pages could not be opened"));
+        }
+        return new VBox(20, new Label(title), table);
+    }
+
+    /** A read-only table of {@link PagedRows}, one column per field. */
+    private static TableView<String[]> createPagedTable(List<String> columns) {
+        TableView<String[]> table = new TableView<>();
+        table.setFixedCellSize(24);
+        addColumns(table, columns, (row, field) -> field < row.length ? row[field] : "");
+        return table;
+    }
+
+    /**
+     * Compact mode (-Dvet.archive=compact): the archive is read once, in the
+     * background, into a {@link CompactRoster}, so scrolling never waits for
+     * the disk while each row still costs only a few dozen bytes. It is
+     * opt-in because the whole archive is read up front; about 5 times
+     * smaller than holding the animals as objects at 100k and 1M rows (see
+     * {@link RosterFootprint}), and only used for the archive tab.
+     */
+    private TableView<CompactRoster.Row> createCompactArchiveTable() {
+        TableView<CompactRoster.Row> table = new TableView<>();
+        table.setFixedCellSize(24);
+        if (archive != null) {
+            table.setPlaceholder(new Label("Loading the archive..."));
+            CompletableFuture.supplyAsync(() -> {
+                int rows = archive.size();
+                CompactRoster roster = new CompactRoster(rows);
+                for (int i = 0; i < rows; i++) {
+                    addArchivedRow(roster, archive.get(i));
+                }
+                return roster;
+            }, backgroundExecutor).whenCompleteAsync((roster, e) -> {
+                if (e != null) {
+                    table.setPlaceholder(new Label("Failed to read the archive: " + describe(e)));
+                    return;
+                }
+                archivedRoster = new RosterRows(roster, archive, backgroundExecutor);
+                archivedRoster.refresh();
+                table.setItems(archivedRoster);
+            }, Platform::runLater);
+        } else {
+            table.setPlaceholder(new Label("The archive could not be opened"));
+        }
+        addColumns(table, ARCHIVE_COLUMNS, (row, field) -> switch (field) {
+            case 0 -> String.valueOf(row.getId());
+            case 1 -> row.getType();
+            case 2 -> row.getName();
+            case 3 -> String.valueOf(row.getAge());
+            case 4 -> row.getDetails();
+            case 5 -> row.getOwnerName();
+            case 6 -> row.getOwnerId();
+            default -> row.getDate();
+        });
+        return table;
+    }
+
+    /** Sorting would need every row, so it is turned off. */
+    private static <T> void addColumns(TableView<T> table, List<String> titles, BiFunction<T, Integer, String> field) {
+        for (int i = 0; i < titles.size(); i++) {
+            int index = i;
+            TableColumn<T, String> column = Columns.of(titles.get(i),
+                    row -> new ReadOnlyStringWrapper(field.apply(row, index)));
+            column.setSortable(false);
+            table.getColumns().add(column);
+        }
+    }
+
+    /**
+     * Archive rows are "id, type, name, age, details, owner, owner ID,
+     * archived on, breed, flag". Rows archived before breed and flag had
+     * fields of their own carry them only in the details text.
+     */
+    private static void addArchivedRow(CompactRoster roster, String[] row) {
+        String type = row[1];
+        String breed = null;
+        if (type.equals("Dog")) {
+            breed = row.length > 8 ? row[8] : detailValue(row[4], "Breed");
+        }
+        boolean flag = Boolean.parseBoolean(row.length > 9 ? row[9]
+                : detailValue(row[4], type.equals("Cat") ? "Indoor" : "Can fly"));
+        roster.add(Long.parseLong(row[0]), type, row[2], Integer.parseInt(row[3]), breed, flag,
+                row[5], row[6], row[7]);
+    }
+
+    private static String detailValue(String details, String label) {
+        int start = details.lastIndexOf(", " + label + ": ");
+        if (start < 0) {
+            return null;
+        }
+        start += label.length() + 4;
+        int end = details.indexOf(", ", start);
+        return details.substring(start, end < 0 ? details.length() : end);
+    }
+
     private void showAddAnimalDialog(String animalType) {
         Dialog<Animal> dialog = new Dialog<>();
         dialog.setTitle("Add " + animalType);
@@ -352,10 +1718,6 @@ public class JavaApplication extends Application {
                         case "Bird" -> animal = new Bird(name, age, ((CheckBox)grid.getChildren().get(7)).isSelected());
                     }
                     
-                    Owner selectedOwner = ownerCombo.getValue();
-                    if (selectedOwner != null && animal != null) {
-                        selectedOwner.addPet(animal);
-                    }
                     return animal;
                 } catch (NumberFormatException e) {
                     showAlert("Error", "Please enter a valid age");
@@ -364,9 +1726,12 @@ public class JavaApplication extends Application {
             return null;
         });
         
-        dialog.showAndWait().ifPresent(animal -> {
+        showAndWait(dialog).ifPresent(animal -> {
             if (animal != null) {
-                animals.add(animal);
+                if (!store.addAnimal(animal, ownerCombo.getValue())) {
+                    showAlert("Error", "The selected owner has been deleted; the animal was not added");
+                    return;
+                }
                 showAlert("Success", "Animal added successfully");
             }
         });
@@ -409,8 +1774,15 @@ public class JavaApplication extends Application {
             return null;
         });
         
-        dialog.showAndWait().ifPresent(owner -> {
-            owners.add(owner);
+        showAndWait(dialog).ifPresent(owner -> {
+            if (owner.getId().isBlank()) {
+                showAlert("Error", "Please enter an owner ID");
+                return;
+            }
+            if (!store.addOwner(owner)) {
+                showAlert("Error", "An owner with ID " + owner.getId() + " already exists");
+                return;
+            }
             showAlert("Success", "Owner added successfully");
         });
     }
@@ -428,11 +1800,6 @@ public class JavaApplication extends Application {
         ComboBox<Owner> ownerCombo = new ComboBox<>(owners);
         ownerCombo.setPromptText("Select Owner");
         
-        Owner currentOwner = findOwnerByPet(selectedAnimal);
-        if (currentOwner != null) {
-            currentOwner.removePet(selectedAnimal);
-        }
-        
         dialog.getDialogPane().setContent(new VBox(10, 
             new Label("Animal: " + selectedAnimal.getName()),
             new Label("Select Owner:"),
@@ -448,183 +1815,222 @@ public class JavaApplication extends Application {
             return null;
         });
         
-        dialog.showAndWait().ifPresent(owner -> {
-            owner.addPet(selectedAnimal);
+        showAndWait(dialog).ifPresent(owner -> {
+            if (!store.assign(owner, selectedAnimal)) {
+                showAlert("Error", "The owner or the animal has been deleted; nothing was assigned");
+                return;
+            }
             showAlert("Success", "Animal assigned to owner: " + owner.getName());
-            refreshTables();
         });
     }
 
     private void deleteSelectedAnimal() {
-        Animal selected = getSelectedAnimal();
-        if (selected != null) {
-            Owner owner = findOwnerByPet(selected);
-            if (owner != null) {
-                owner.removePet(selected);
-            }
-            animals.remove(selected);
-            showAlert("Success", "Animal deleted successfully");
+        List<Animal> selected = List.copyOf(animalsTable.getSelectionModel().getSelectedItems());
+        if (!selected.isEmpty()) {
+            store.removeAnimals(selected);
+            showAlert("Success", selected.size() == 1 ? "Animal deleted successfully"
+                    : selected.size() + " animals deleted successfully");
         } else {
             showAlert("Warning", "Please select an animal to delete");
         }
     }
 
-    private void deleteSelectedOwner() {
-        Owner selected = getSelectedOwner();
-        if (selected != null) {
-            
-            List<Animal> petsToRemove = new ArrayList<>(selected.getPets());
-            
-            for (Animal pet : petsToRemove) {
-                animals.remove(pet);
-            }
-            
-
-            boolean removed = owners.remove(selected);
-            
-            if (removed) {
-
-                refreshAllTables();
-                showAlert("Success", "Owner and associated pets deleted successfully");
-            } else {
-                showAlert("Error", "Failed to delete owner");
+    /**
+     * Moves the selected animals out of memory into the archive. The rows are
+     * made durable first; only then are the animals removed and the removal
+     * journaled, so a failed write loses nothing.
+     */
+    private void archiveSelectedAnimals() {
+        List<Animal> selected = List.copyOf(animalsTable.getSelectionModel().getSelectedItems());
+        if (selected.isEmpty()) {
+            showAlert("Warning", "Please select an animal to archive");
+            return;
+        }
+        if (archive == null) {
+            showAlert("Error", "The archive could not be opened");
+            return;
+        }
+
+        String archivedOn = LocalDate.now().toString();
+        List<String[]> rows = new ArrayList<>(selected.size());
+        for (Animal animal : selected) {
+            Owner owner = animal.getOwner();
+            String breed = animal instanceof Dog dog ? dog.getBreed() : "";
+            boolean flag = animal instanceof Cat cat ? cat.isIndoor() : animal instanceof Bird bird && bird.isCanFly();
+            rows.add(new String[] {String.valueOf(animal.getId()), animal.getType(), animal.getName(),
+                    String.valueOf(animal.getAge()), animal.toString(),
+                    owner != null ? owner.getName() : "None", owner != null ? owner.getId() : "", archivedOn,
+                    breed, String.valueOf(flag)});
+        }
+
+        CompletableFuture.runAsync(() -> {
+            try {
+                archive.append(rows);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, saveExecutor).whenCompleteAsync((ignored, e) -> {
+            if (e != null) {
+                showAlert("Error", "Failed to archive: " + describe(e));
+                return;
+            }
+            store.removeAnimals(selected);
+            if (archivedAnimals != null) {
+                archivedAnimals.refresh();
             }
+            if (archivedRoster != null) {
+                archivedRoster.refresh();
+            }
+            showAlert("Success", selected.size() == 1 ? "Animal archived successfully"
+                    : selected.size() + " animals archived successfully");
+        }, Platform::runLater);
+    }
+
+    private void deleteSelectedOwner() {
+        List<Owner> selected = List.copyOf(ownersTable.getSelectionModel().getSelectedItems());
+        if (!selected.isEmpty()) {
+            store.removeOwners(selected);
+            showAlert("Success", selected.size() == 1 ? "Owner and associated pets deleted successfully"
+                    : selected.size() + " owners and their pets deleted successfully");
         } else {
             showAlert("Warning", "Please select an owner to delete");
         }
     }
 
-    private void refreshAllTables() {
-        TabPane tabPane = (TabPane) primaryStage.getScene().getRoot().getChildrenUnmodifiable().get(0);
-        
-        for (Tab tab : tabPane.getTabs()) {
-            if (tab.getContent() instanceof VBox vBox) {
-                for (javafx.scene.Node node : vBox.getChildren()) {
-                    if (node instanceof TableView) {
-                        TableView<?> tableView = (TableView<?>) node;
-                        
+    private Animal getSelectedAnimal() {
+        return animalsTable == null ? null : animalsTable.getSelectionModel().getSelectedItem();
+    }
 
-                        tableView.setItems(null);
-                        tableView.layout();
-                        
-                        if (tab.getText().equals("Owners")) {
-                            ((TableView<Owner>) tableView).setItems(owners);
-                        } else if (tab.getText().equals("Animals")) {
-                            ((TableView<Animal>) tableView).setItems(animals);
-                        }
-                        
-                        tableView.refresh();
-                    }
-                }
-            }
-        }
+    static String searchText(Owner owner) {
+        return owner.getName() + " " + owner.getId() + " " + owner.getPhoneNumber();
     }
 
-    private Animal getSelectedAnimal() {
-        TabPane tabPane = (TabPane) primaryStage.getScene().getRoot().getChildrenUnmodifiable().get(0);
-        Tab selectedTab = tabPane.getSelectionModel().getSelectedItem();
-        
-        if (selectedTab != null && selectedTab.getText().equals("Animals")) {
-            VBox tabContent = (VBox) selectedTab.getContent();
-            if (tabContent.getChildren().get(0) instanceof TableView) {
-                @SuppressWarnings("unchecked")
-                TableView<Animal> table = (TableView<Animal>) tabContent.getChildren().get(0);
-                return table.getSelectionModel().getSelectedItem();
-            }
+    static String searchText(Animal animal) {
+        StringBuilder text = new StringBuilder(animal.getName()).append(' ').append(animal.getType());
+        if (animal instanceof Dog dog) {
+            text.append(' ').append(dog.getBreed());
         }
-        return null;
+        Owner owner = animal.getOwner();
+        if (owner != null) {
+            text.append(' ').append(searchText(owner));
+        }
+        return text.toString();
     }
 
-    private Owner getSelectedOwner() {
-        TabPane tabPane = (TabPane) primaryStage.getScene().getRoot().getChildrenUnmodifiable().get(0);
-        Tab selectedTab = tabPane.getSelectionModel().getSelectedItem();
-        
-        if (selectedTab != null && selectedTab.getText().equals("Owners")) {
-            VBox tabContent = (VBox) selectedTab.getContent();
-            if (tabContent.getChildren().get(1) instanceof TableView) {
-                @SuppressWarnings("unchecked")
-                TableView<Owner> table = (TableView<Owner>) tabContent.getChildren().get(1);
-                return table.getSelectionModel().getSelectedItem();
+    private record DataSnapshot(List<Owner> owners, List<Animal> animals, List<List<Animal>> petsByOwner,
+                                long journalSegment) {
+        static DataSnapshot capture(List<Owner> owners, List<Animal> animals, long journalSegment) {
+            List<List<Animal>> petsByOwner = new ArrayList<>(owners.size());
+            for (Owner owner : owners) {
+                petsByOwner.add(List.copyOf(owner.getPets()));
             }
+            return new DataSnapshot(List.copyOf(owners), List.copyOf(animals), petsByOwner, journalSegment);
         }
-        return null;
-    }
 
-    private Owner findOwnerByPet(Animal animal) {
-        for (Owner owner : owners) {
-            if (owner.getPets().contains(animal)) {
-                return owner;
-            }
+        static DataSnapshot of(ModelStore.Snapshot snapshot, long journalSegment) {
+            return new DataSnapshot(snapshot.owners(), snapshot.animals(), snapshot.petsByOwner(), journalSegment);
         }
-        return null;
     }
 
-    private Owner findOwnerByName(String name) {
-        for (Owner owner : owners) {
-            if (owner.getName().equals(name)) {
-                return owner;
+    /**
+     * Journals an edit. This runs under the store's locks, so a journal that
+     * is closed, or never opened, turns the edit into a counted no-op rather
+     * than an exception inside the store; a flush without an open journal
+     * writes a full snapshot instead.
+     */
+    private void recordChange(String record) {
+        if (!journal.append(record)) {
+            JOURNAL_SKIPPED.increment();
+            if (journalSkipReported.compareAndSet(false, true)) {
+                System.err.println("The change journal is not open; edits are kept only by a full save");
             }
+            return;
+        }
+        if (journal.records() >= COMPACTION_THRESHOLD && compactionQueued.compareAndSet(false, true)) {
+            saveExecutor.execute(this::compactJournal);
         }
-        return null;
     }
 
-    private Animal findAnimalByName(String name) {
-        for (Animal animal : animals) {
-            if (animal.getName().equals(name)) {
-                return animal;
+    private void saveDataToFiles() {
+        long started = System.nanoTime();
+        repository.flush().whenCompleteAsync((ignored, e) -> {
+            SAVE_FLUSH.since(started);
+            if (e != null) {
+                showAlert("Error", "Failed to save data: " + describe(e));
+            } else {
+                showAlert("Success", "Data saved successfully");
             }
-        }
-        return null;
+        }, Platform::runLater);
     }
 
-    private void refreshTables() {
-        TabPane tabPane = (TabPane) primaryStage.getScene().getRoot().getChildrenUnmodifiable().get(0);
-        for (Tab tab : tabPane.getTabs()) {
-            if (tab.getContent() instanceof VBox vBox) {
-                for (var node : vBox.getChildren()) {
-                    if (node instanceof TableView) {
-                        ((TableView<?>) node).refresh();
-                    }
+    /**
+     * Starts a new journal segment and writes a snapshot covering the closed
+     * ones, on the save thread. The rotation happens inside the store's
+     * snapshot, so the snapshot holds exactly the edits of the closed
+     * segments. It only swaps the journal's buffer; writing the segments,
+     * the fsync and the snapshot all come after the store is released.
+     */
+    private void compactJournal() {
+        compactionQueued.set(false);
+        long started = System.nanoTime();
+        long[] covered = {journalReplayedThrough};
+        try {
+            ModelStore.Snapshot snapshot = store.snapshot(() -> {
+                if (journal.isOpen()) {
+                    covered[0] = journal.rotate();
                 }
+            });
+            if (journal.isOpen()) {
+                journal.sync();
             }
+            snapshotWriter.write(serialize(DataSnapshot.of(snapshot, covered[0])));
+            journal.deleteUpTo(covered[0]);
+            SAVE_COMPACTION.since(started);
+        } catch (IOException | UncheckedIOException e) {
+            Platform.runLater(() -> showAlert("Error", "Failed to save data: " + describe(e)));
         }
     }
 
-    private void saveDataToFiles() {
-        try {
-            // Save animals
-            try (PrintWriter animalWriter = new PrintWriter("animals.txt")) {
-                for (Animal animal : animals) {
-                    switch (animal) {
-                        case Dog dog -> animalWriter.println("Dog," + dog.getName() + "," + dog.getAge() + "," + dog.getBreed());
-                        case Cat cat -> animalWriter.println("Cat," + cat.getName() + "," + cat.getAge() + "," + cat.isIndoor());
-                        case Bird bird -> animalWriter.println("Bird," + bird.getName() + "," + bird.getAge() + "," + bird.isCanFly());
-                        default -> {
-                        }
-                    }
-                }
-            }
+    private Map<String, SnapshotWriter.Content> serialize(DataSnapshot snapshot) {
+        return binarySnapshots ? serializeBinary(snapshot) : serializeText(snapshot);
+    }
 
-            // Save owners
-            try (PrintWriter ownerWriter = new PrintWriter("owners.txt")) {
-                for (Owner owner : owners) {
-                    ownerWriter.println(owner.getName() + "," + owner.getId() + "," + owner.getPhoneNumber());
-                }
-            }
+    private static Map<String, SnapshotWriter.Content> serializeBinary(DataSnapshot snapshot) {
+        Map<String, SnapshotWriter.Content> files = new LinkedHashMap<>();
+        files.put(BINARY_SNAPSHOT_FILE, out -> writeBinarySnapshot(snapshot, out));
+        files.put(SNAPSHOT_GENERATION_FILE, generationFile(snapshot, BINARY_FORMAT));
+        return files;
+    }
 
-            // Save relationships
-            try (PrintWriter relationWriter = new PrintWriter("relations.txt")) {
-                for (Owner owner : owners) {
-                    for (Animal pet : owner.getPets()) {
-                        relationWriter.println(owner.getName() + "," + pet.getName());
-                    }
+    private static Map<String, SnapshotWriter.Content> serializeText(DataSnapshot snapshot) {
+        Map<String, SnapshotWriter.Content> files = new LinkedHashMap<>();
+        files.put("animals.txt", SnapshotWriter.text(out -> {
+            for (Animal animal : snapshot.animals()) {
+                out.write(formatAnimal(animal));
+                out.write('\n');
+            }
+        }));
+        files.put("owners.txt", SnapshotWriter.text(out -> {
+            for (Owner owner : snapshot.owners()) {
+                out.write(formatOwner(owner));
+                out.write('\n');
+            }
+        }));
+        files.put("relations.txt", SnapshotWriter.text(out -> {
+            for (int i = 0; i < snapshot.owners().size(); i++) {
+                Owner owner = snapshot.owners().get(i);
+                for (Animal pet : snapshot.petsByOwner().get(i)) {
+                    out.write(RecordReader.escape(owner.getId()) + "," + pet.getId() + "\n");
                 }
             }
+        }));
+        files.put(SNAPSHOT_GENERATION_FILE, generationFile(snapshot, TEXT_FORMAT));
+        return files;
+    }
 
-            showAlert("Success", "Data saved successfully");
-        } catch (IOException e) {
-            showAlert("Error", "Failed to save data: " + e.getMessage());
-        }
+    /** snapshot.gen is written in the same generation as the files it names, so the two always agree. */
+    private static SnapshotWriter.Content generationFile(DataSnapshot snapshot, String format) {
+        return SnapshotWriter.text(out -> out.write(snapshot.journalSegment() + "," + format + "\n"));
     }
 
     private ImageView createLogo() {
@@ -645,182 +2051,391 @@ public class JavaApplication extends Application {
     }
 
     private void showAlert(String title, String message) {
+        showAlert(title, message, List.of());
+    }
+
+    /** An alert whose details, one per line, can be expanded below the message. */
+    private void showAlert(String title, String message, List<String> details) {
+        if ("Error".equals(title)) {
+            ERRORS_SHOWN.increment();
+        }
         Alert alert = new Alert(Alert.AlertType.INFORMATION);
         alert.setTitle(title);
         alert.setHeaderText(null);
         alert.setContentText(message);
-        alert.showAndWait();
+        if (!details.isEmpty()) {
+            TextArea text = new TextArea(String.join("\n", details));
+            text.setEditable(false);
+            text.setPrefRowCount(12);
+            alert.getDialogPane().setExpandableContent(text);
+        }
+        showAndWait(alert);
     }
 
-    public static class Owner {
-        private String name;
-        private String id;
-        protected String phoneNumber;
-        private ObservableList<Animal> pets = FXCollections.observableArrayList();
-
-        public Owner() {}
-        
-        public Owner(String name, String id, String phoneNumber) {
-            this.name = name;
-            this.id = id;
-            this.phoneNumber = phoneNumber;
+    /**
+     * Table columns bound straight to a model accessor, so a cell's value is a
+     * method call on the row instead of a reflective getter lookup.
+     */
+    private static final class Columns {
+        private Columns() {}
+
+        static <S, T> TableColumn<S, T> of(String title, Function<S, ObservableValue<T>> property) {
+            TableColumn<S, T> column = new TableColumn<>(title);
+            column.setCellValueFactory(cell -> property.apply(cell.getValue()));
+            return column;
         }
 
-        public String getName() {
-            return name; 
-        }
-        public void setName(String name) { 
-            this.name = name; 
-        }
-        public String getId() { 
-            return id; 
+        /** A column of a value that is not edited in the UI, read when the cell is filled. */
+        static <S, T> TableColumn<S, T> fixed(String title, Function<S, T> getter) {
+            return of(title, row -> new ReadOnlyObjectWrapper<>(getter.apply(row)));
         }
-        public void setId(String id) {
-            this.id = id;
-        }
-        public String getPhoneNumber() {
-            return phoneNumber; 
-        }
-        public void setPhoneNumber(String phoneNumber) {
-            this.phoneNumber = phoneNumber; 
+    }
+
+    /**
+     * Hash index from a key to the items carrying it, in insertion order, so
+     * lookups keep the "first match wins" behaviour of a linear scan.
+     */
+    private static class LookupIndex<K, T> {
+        private final Map<K, List<T>> entries = new HashMap<>();
+        private final Function<T, K> key;
+
+        LookupIndex(Function<T, K> key) {
+            this.key = key;
         }
-        public ObservableList<Animal> getPets() { 
-            return pets; 
+
+        void add(T item) {
+            entries.computeIfAbsent(key.apply(item), k -> new ArrayList<>(1)).add(item);
         }
 
-        public void addPet(Animal animal) {
-            pets.add(animal);
+        void remove(T item) {
+            K k = key.apply(item);
+            List<T> items = entries.get(k);
+            if (items != null && items.remove(item) && items.isEmpty()) {
+                entries.remove(k);
+            }
         }
 
-        public void removePet(Animal animal) {
-            pets.remove(animal);
+        T first(K k) {
+            List<T> items = entries.get(k);
+            return items == null ? null : items.get(0);
         }
+    }
 
+    /**
+     * The snapshot files plus the change journal. Edits are appended to the
+     * journal as records and folded into a new snapshot every
+     * COMPACTION_THRESHOLD records; loading replays the journal on top of
+     * the last snapshot.
+     */
+    private class FileRepository implements VetRepository {
+        private volatile boolean loadFailed;
+
+        /**
+         * Parses owners.txt and animals.txt concurrently, links relations.txt
+         * once both are done and replays the change journal on top.
+         */
         @Override
-        public String toString() {
-            return name;
+        public CompletableFuture<LoadedData> load(List<String> problems) {
+            CompletableFuture<Void> recovered = CompletableFuture.runAsync(() -> {
+                long started = System.nanoTime();
+                try {
+                    snapshotWriter.recover(DATA_FILES);
+                } catch (IOException e) {
+                    problems.add("Failed to recover interrupted save: " + e.getMessage());
+                }
+                LOAD_RECOVER.since(started);
+            }, backgroundExecutor);
+
+            return recovered.thenComposeAsync(ignored -> readSnapshot(problems), backgroundExecutor)
+                    .thenApplyAsync(loaded -> {
+                        if (loaded.owners.isEmpty() && loaded.animals.isEmpty()) {
+                            addSampleData(loaded);
+                        }
+                        replayJournal(loaded, problems);
+                        return loaded;
+                    }, backgroundExecutor)
+                    .whenComplete((loaded, e) -> loadFailed = e != null);
         }
-        
-        public boolean equals(Owner other) {
-            return this.name.equals(other.name) && this.phoneNumber.equals(other.phoneNumber);
+
+        @Override
+        public void addOwner(Owner owner) {
+            recordChange("ADD_OWNER," + formatOwner(owner));
         }
-    } 
-    
-    
-    public interface Serviceable {
-        void provideService(String type);
-    }
 
-    public abstract class Animal implements Serviceable {
-        protected String name;
-        private int age;
-        private String type;
+        @Override
+        public void addAnimal(Animal animal) {
+            recordChange("ADD_ANIMAL," + formatAnimal(animal));
+        }
 
-        public Animal() {}
-        public Animal(String name, int age, String type) {
-            this.name = name;
-            this.age = age;
-            this.type = type;
+        @Override
+        public void assign(Owner owner, Animal animal) {
+            recordChange("ASSIGN," + RecordReader.escape(owner.getId()) + "," + animal.getId());
         }
 
-        public StringProperty nameProperty() { return new SimpleStringProperty(name); }
-        public IntegerProperty ageProperty() { return new SimpleIntegerProperty(age); }
-        public StringProperty typeProperty() { return new SimpleStringProperty(type); }
-        public StringProperty detailsProperty() { return new SimpleStringProperty(toString()); }
+        @Override
+        public void deleteAnimal(Animal animal) {
+            recordChange("DELETE_ANIMAL," + animal.getId());
+        }
 
-        public String getName() { return name; }
-        public int getAge() { return age; }
-        public String getType() { return type; }
-        public void setName(String name) { this.name = name; }
-        public void setAge(int age) { this.age = age; }
-        public void setType(String type) { this.type = type; }
+        @Override
+        public void deleteOwner(Owner owner) {
+            recordChange("DELETE_OWNER," + RecordReader.escape(owner.getId()));
+        }
 
+        /**
+         * Syncs the journal, so the cost depends only on the edits. Without a
+         * journal a full snapshot is written instead, unless loading failed:
+         * the store then holds sample data, not the files' contents.
+         */
         @Override
-        public String toString() {
-            return "Type: " + type + ", Name: " + name + ", Age: " + age;
+        public CompletableFuture<Void> flush() {
+            if (loadFailed) {
+                return CompletableFuture.failedFuture(new IOException(
+                        "the data files could not be loaded, and saving would overwrite them"));
+            }
+            if (!journal.isOpen()) {
+                DataSnapshot snapshot = DataSnapshot.of(store.snapshot(() -> {}), journalReplayedThrough);
+                return CompletableFuture.runAsync(() -> {
+                    try {
+                        snapshotWriter.write(serialize(snapshot));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, saveExecutor);
+            }
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    journal.sync();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, saveExecutor);
         }
 
-        public abstract String getPrice();
+        @Override
+        public void close() throws IOException {
+            if (journal.isOpen()) {
+                journal.sync();
+                journal.close();
+            }
+        }
     }
 
-    public class Dog extends Animal {
-        private String breed;
+    /** List view of a {@link CompactRoster} that picks up rows appended to the archive after it was read. */
+    private static final class RosterRows extends ObservableListBase<CompactRoster.Row> {
+        private final CompactRoster roster;
+        private final PagedStore store;
+        private final Executor reader;
 
-        public Dog(String name, int age, String breed) {
-            super(name, age, "Dog");
-            this.breed = breed;
+        RosterRows(CompactRoster roster, PagedStore store, Executor reader) {
+            this.roster = roster;
+            this.store = store;
+            this.reader = reader;
         }
 
         @Override
-        public void provideService(String type) {
-            System.out.println("Providing " + type + " service to dog (" + breed + ")");
+        public CompactRoster.Row get(int index) {
+            return roster.row(index);
         }
 
         @Override
-        public String getPrice() {
-            return "Price: 250-300 SAR";
+        public int size() {
+            return roster.size();
         }
 
-        @Override
-        public String toString() {
-            return super.toString() + ", Breed: " + breed + ", " + getPrice();
+        /**
+         * Reads the rows appended to the store since the last call on the
+         * reader, then copies and announces them on the FX thread.
+         */
+        void refresh() {
+            int from = roster.size();
+            CompletableFuture.supplyAsync(() -> {
+                List<String[]> rows = new ArrayList<>();
+                for (int i = from; i < store.size(); i++) {
+                    rows.add(store.get(i));
+                }
+                return rows;
+            }, reader).thenAcceptAsync(rows -> {
+                int previous = roster.size();
+                for (int i = previous - from; i < rows.size(); i++) {
+                    addArchivedRow(roster, rows.get(i));
+                }
+                if (roster.size() > previous) {
+                    beginChange();
+                    nextAdd(previous, roster.size());
+                    endChange();
+                }
+            }, Platform::runLater);
         }
-
-        public String getBreed() { return breed; }
-        public void setBreed(String breed) { this.breed = breed; }
     }
 
-    
-    public class Cat extends Animal {
-        private boolean indoor;
-
-        public Cat(String name, int age, boolean indoor) {
-            super(name, age, "Cat");
-            this.indoor = indoor;
+    /**
+     * List view of a {@link PagedStore}. Rows come from its page cache; a row
+     * whose page is not cached shows empty while the page and its neighbours
+     * are read on the reader, and is announced as replaced once it arrives,
+     * so the FX thread never reads the disk. A page that fails to read is
+     * reported once and remembered: its rows show as unreadable rather than
+     * asking for the page again on every call. Used on the FX thread only.
+     */
+    private static final class PagedRows extends ObservableListBase<String[]> {
+        private static final String[] LOADING = {};
+        private static final String[] FAILED = {"Could not be read"};
+
+        private final PagedStore store;
+        private final Executor reader;
+        private final Set<Integer> loading = new HashSet<>();
+        private final Set<Integer> failed = new HashSet<>();
+        private int size;
+
+        PagedRows(PagedStore store, Executor reader) {
+            this.store = store;
+            this.reader = reader;
+            this.size = store.size();
         }
 
         @Override
-        public void provideService(String type) {
-            System.out.println("Providing " + type + " service to " + (indoor ? "indoor" : "") + " cat");
+        public String[] get(int index) {
+            Objects.checkIndex(index, size);
+            String[] row = store.cached(index);
+            if (row != null) {
+                return row;
+            }
+            int page = index / PagedStore.PAGE_SIZE;
+            if (failed.contains(page)) {
+                return FAILED;
+            }
+            load(page);
+            load(page - 1);
+            load(page + 1);
+            return LOADING;
         }
 
-        @Override
-        public String getPrice() {
-            return "Price: 150-200 SAR" + (indoor ? " (indoor discount)" : "");
+        private void load(int page) {
+            if (page < 0 || page * PagedStore.PAGE_SIZE >= size || failed.contains(page) || !loading.add(page)) {
+                return;
+            }
+            store.load(page, reader).whenCompleteAsync((ignored, e) -> {
+                loading.remove(page);
+                int from = page * PagedStore.PAGE_SIZE;
+                int to = Math.min(size, from + PagedStore.PAGE_SIZE);
+                if (e != null) {
+                    failed.add(page);
+                    System.err.println("Failed to read rows " + from + " to " + (to - 1) + ": " + describe(e));
+                }
+                beginChange();
+                nextReplace(from, to, Collections.nCopies(to - from, LOADING));
+                endChange();
+            }, Platform::runLater);
         }
 
         @Override
-        public String toString() {
-            return super.toString() + ", Indoor: " + indoor + ", " + getPrice();
+        public int size() {
+            return size;
         }
 
-        public boolean isIndoor() { return indoor; }
-        public void setIndoor(boolean indoor) { this.indoor = indoor; }
+        /** Announces rows appended to the store since the last call. */
+        void refresh() {
+            int previous = size;
+            size = store.size();
+            if (size > previous) {
+                beginChange();
+                nextAdd(previous, size);
+                endChange();
+            }
+        }
     }
 
-    public class Bird extends Animal {
-        private boolean canFly;
-
-        public Bird(String name, int age, boolean canFly) {
-            super(name, age, "Bird");
-            this.canFly = canFly;
+    /**
+     * Search box over a FilteredList. The index lives on the search thread:
+     * list changes and queries are queued there in order, so a query always
+     * sees every edit made before it and the FX thread never waits. Typing
+     * is debounced, and a query that only extends the previous one narrows
+     * the previous result instead of going back to the index.
+     */
+    private class SearchBox<T> {
+        private final TextField field = new TextField();
+        private final SearchIndex<T> index = new SearchIndex<>();
+        private final FilteredList<T> filtered;
+        private final Function<T, String> text;
+        private final PauseTransition debounce = new PauseTransition(Duration.millis(150));
+        private long generation;
+        private String lastQuery;
+        private Set<T> lastResult;
+
+        SearchBox(ObservableList<T> source, Function<T, String> text, String prompt) {
+            this.filtered = new FilteredList<>(source);
+            this.text = text;
+            field.setPromptText(prompt);
+            debounce.setOnFinished(e -> search());
+            field.textProperty().addListener((obs, oldVal, newVal) -> debounce.playFromStart());
+            source.addListener((ListChangeListener<T>) change -> {
+                while (change.next()) {
+                    List<T> removed = List.copyOf(change.getRemoved());
+                    List<T> added = new ArrayList<>(change.getAddedSize());
+                    List<String> texts = new ArrayList<>(change.getAddedSize());
+                    for (T item : change.getAddedSubList()) {
+                        added.add(item);
+                        texts.add(text.apply(item));
+                    }
+                    searchExecutor.execute(() -> {
+                        removed.forEach(index::remove);
+                        for (int i = 0; i < added.size(); i++) {
+                            index.put(added.get(i), texts.get(i));
+                        }
+                    });
+                }
+                indexChanged();
+            });
         }
 
-        @Override
-        public void provideService(String type) {
-            System.out.println("Providing " + type + " service to " + (canFly ? "flying" : "non-flying") + " bird");
+        /** Sorted view of the filtered items, ordered by the table's sort columns. */
+        SortedList<T> bind(TableView<T> table) {
+            SortedList<T> sorted = new SortedList<>(filtered);
+            sorted.comparatorProperty().bind(table.comparatorProperty());
+            table.setItems(sorted);
+            return sorted;
         }
 
-        @Override
-        public String getPrice() {
-            return "Price: 100-150 SAR" + (canFly ? "" : " (extra care needed)");
+        /** Re-indexes an item whose searchable text changed without a list change. */
+        void update(T item) {
+            String current = text.apply(item);
+            searchExecutor.execute(() -> index.put(item, current));
+            indexChanged();
         }
 
-        @Override
-        public String toString() {
-            return super.toString() + ", Can fly: " + canFly + ", " + getPrice();
+        private void indexChanged() {
+            lastQuery = null;
+            lastResult = null;
+            if (!field.getText().isBlank()) {
+                debounce.playFromStart();
+            }
         }
 
-        public boolean isCanFly() { return canFly; }
-        public void setCanFly(boolean canFly) { this.canFly = canFly; }
+        private void search() {
+            String query = field.getText().trim();
+            long current = ++generation;
+            if (query.isEmpty()) {
+                lastQuery = null;
+                lastResult = null;
+                filtered.setPredicate(null);
+                return;
+            }
+            String previousQuery = lastQuery;
+            Set<T> previous = lastResult;
+            searchExecutor.execute(() -> {
+                long started = System.nanoTime();
+                Set<T> result = previous != null && SearchIndex.narrows(previousQuery, query)
+                        ? index.refine(previous, query)
+                        : index.search(query);
+                SEARCH_QUERY.since(started);
+                Platform.runLater(() -> {
+                    if (current == generation) {
+                        lastQuery = query;
+                        lastResult = result;
+                        filtered.setPredicate(result::contains);
+                    }
+                });
+            });
+        }
     }
+}
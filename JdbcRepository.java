@@ -0,0 +1,305 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps owners and animals in an SQL database reached through JDBC, for
+ * example an embedded H2 or Derby file database whose driver is on the
+ * classpath. The schema is created on first use, with the owner ID as
+ * primary key and indexes on animal name and on the owner of each pet.
+ *
+ * <p>The application reads everything once, in {@link #load(List)}, and
+ * answers lookups from {@link ModelStore}; this class has no query methods.
+ * The indexes serve the edit statements: inserts check the primary keys,
+ * assign and delete find the animal by ID, and deleting an owner finds its
+ * pets through the owner index. The name index is there for queries run
+ * against the database directly.
+ *
+ * <p>The connection belongs to one thread. Every edit is captured when the
+ * store reports it and then committed there in its own transaction, so no
+ * editor waits for the database and a failed edit is rolled back on its own.
+ */
+class JdbcRepository implements VetRepository {
+    @FunctionalInterface
+    private interface Work {
+        void run() throws SQLException;
+    }
+
+    private final String url;
+    private final Consumer<String> failures;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "vet-db");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+    private Connection connection;
+    private long ownerSequence;
+    // Edits that failed since the last flush; confined to the database thread.
+    private String firstFailure;
+    private int failuresSinceFlush;
+
+    /** Failures of individual edits are passed to {@code failures}, on the database thread, and fail the next flush. */
+    JdbcRepository(String url, Consumer<String> failures) {
+        this.url = url;
+        this.failures = failures;
+    }
+
+    @Override
+    public CompletableFuture<JavaApplication.LoadedData> load(List<String> problems) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                connection = DriverManager.getConnection(url);
+                connection.setAutoCommit(false);
+                createSchema();
+                JavaApplication.LoadedData loaded = readAll(problems);
+                if (loaded.owners.isEmpty() && loaded.animals.isEmpty()) {
+                    JavaApplication.addSampleData(loaded);
+                    insertAll(loaded);
+                }
+                return loaded;
+            } catch (SQLException e) {
+                throw new IllegalStateException("Cannot open database " + url + ": " + e.getMessage(), e);
+            }
+        }, executor);
+    }
+
+    private void createSchema() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            try {
+                statement.executeQuery("SELECT COUNT(*) FROM owners").close();
+                return;
+            } catch (SQLException missing) {
+                connection.rollback();
+            }
+            statement.executeUpdate("CREATE TABLE owners (id VARCHAR(64) PRIMARY KEY, name VARCHAR(255),"
+                    + " phone VARCHAR(64), seq BIGINT NOT NULL)");
+            statement.executeUpdate("CREATE TABLE animals (id BIGINT PRIMARY KEY, type VARCHAR(8) NOT NULL,"
+                    + " name VARCHAR(255), age INT NOT NULL, breed VARCHAR(255), flag BOOLEAN,"
+                    + " owner_id VARCHAR(64) REFERENCES owners (id))");
+            statement.executeUpdate("CREATE INDEX animals_name ON animals (name)");
+            statement.executeUpdate("CREATE INDEX animals_owner ON animals (owner_id)");
+        }
+        connection.commit();
+    }
+
+    private JavaApplication.LoadedData readAll(List<String> problems) throws SQLException {
+        JavaApplication.LoadedData loaded = new JavaApplication.LoadedData(new ArrayList<>(), new ArrayList<>());
+        Map<String, Owner> ownersById = new HashMap<>();
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet rows = statement.executeQuery("SELECT id, name, phone, seq FROM owners ORDER BY seq")) {
+                while (rows.next()) {
+                    Owner owner = new Owner(rows.getString(2), rows.getString(1),
+                            rows.getString(3));
+                    loaded.addOwner(owner);
+                    ownersById.put(owner.getId(), owner);
+                    ownerSequence = rows.getLong(4);
+                }
+            }
+            try (ResultSet rows = statement.executeQuery(
+                    "SELECT id, type, name, age, breed, flag, owner_id FROM animals ORDER BY id")) {
+                while (rows.next()) {
+                    long id = rows.getLong(1);
+                    Animal animal = switch (rows.getString(2)) {
+                        case "Dog" -> new Dog(id, rows.getString(3), rows.getInt(4), rows.getString(5));
+                        case "Cat" -> new Cat(id, rows.getString(3), rows.getInt(4), rows.getBoolean(6));
+                        case "Bird" -> new Bird(id, rows.getString(3), rows.getInt(4), rows.getBoolean(6));
+                        default -> null;
+                    };
+                    if (animal == null) {
+                        problems.add("animals:" + id + ": unknown animal type '" + rows.getString(2) + "'");
+                        continue;
+                    }
+                    loaded.addAnimal(animal);
+                    String ownerId = rows.getString(7);
+                    Owner owner = ownerId == null ? null : ownersById.get(ownerId);
+                    if (owner != null) {
+                        owner.addPet(animal);
+                    }
+                }
+            }
+        }
+        connection.commit();
+        return loaded;
+    }
+
+    private void insertAll(JavaApplication.LoadedData loaded) throws SQLException {
+        try {
+            for (Owner owner : loaded.owners) {
+                insertOwner(owner.getId(), owner.getName(), owner.getPhoneNumber());
+            }
+            for (Animal animal : loaded.animals) {
+                insertAnimal(AnimalRow.of(animal));
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+    }
+
+    /** Column values of an animal, captured before the edit is queued. */
+    private record AnimalRow(long id, String type, String name, int age, String breed, boolean flag, String ownerId) {
+        static AnimalRow of(Animal animal) {
+            String ownerId = animal.getOwner() != null ? animal.getOwner().getId() : null;
+            return switch (animal) {
+                case Dog dog -> new AnimalRow(dog.getId(), "Dog", dog.getName(), dog.getAge(),
+                        dog.getBreed(), false, ownerId);
+                case Cat cat -> new AnimalRow(cat.getId(), "Cat", cat.getName(), cat.getAge(),
+                        null, cat.isIndoor(), ownerId);
+                case Bird bird -> new AnimalRow(bird.getId(), "Bird", bird.getName(), bird.getAge(),
+                        null, bird.isCanFly(), ownerId);
+                default -> throw new IllegalArgumentException("Unknown animal " + animal);
+            };
+        }
+    }
+
+    private void insertOwner(String id, String name, String phone) throws SQLException {
+        PreparedStatement insert = statement("INSERT INTO owners (id, name, phone, seq) VALUES (?, ?, ?, ?)");
+        insert.setString(1, id);
+        insert.setString(2, name);
+        insert.setString(3, phone);
+        insert.setLong(4, ++ownerSequence);
+        insert.executeUpdate();
+    }
+
+    private void insertAnimal(AnimalRow row) throws SQLException {
+        PreparedStatement insert = statement(
+                "INSERT INTO animals (id, type, name, age, breed, flag, owner_id) VALUES (?, ?, ?, ?, ?, ?, ?)");
+        insert.setLong(1, row.id());
+        insert.setString(2, row.type());
+        insert.setString(3, row.name());
+        insert.setInt(4, row.age());
+        insert.setString(5, row.breed());
+        insert.setBoolean(6, row.flag());
+        insert.setString(7, row.ownerId());
+        insert.executeUpdate();
+    }
+
+    private PreparedStatement statement(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    @Override
+    public void addOwner(Owner owner) {
+        String id = owner.getId();
+        String name = owner.getName();
+        String phone = owner.getPhoneNumber();
+        commit("add owner " + id, () -> insertOwner(id, name, phone));
+    }
+
+    @Override
+    public void addAnimal(Animal animal) {
+        AnimalRow row = AnimalRow.of(animal);
+        commit("add animal " + row.id(), () -> insertAnimal(row));
+    }
+
+    @Override
+    public void assign(Owner owner, Animal animal) {
+        String ownerId = owner.getId();
+        long animalId = animal.getId();
+        commit("assign animal " + animalId, () -> {
+            PreparedStatement update = statement("UPDATE animals SET owner_id = ? WHERE id = ?");
+            update.setString(1, ownerId);
+            update.setLong(2, animalId);
+            update.executeUpdate();
+        });
+    }
+
+    @Override
+    public void deleteAnimal(Animal animal) {
+        long id = animal.getId();
+        commit("delete animal " + id, () -> {
+            PreparedStatement delete = statement("DELETE FROM animals WHERE id = ?");
+            delete.setLong(1, id);
+            delete.executeUpdate();
+        });
+    }
+
+    @Override
+    public void deleteOwner(Owner owner) {
+        String id = owner.getId();
+        commit("delete owner " + id, () -> {
+            PreparedStatement deletePets = statement("DELETE FROM animals WHERE owner_id = ?");
+            deletePets.setString(1, id);
+            deletePets.executeUpdate();
+            PreparedStatement delete = statement("DELETE FROM owners WHERE id = ?");
+            delete.setString(1, id);
+            delete.executeUpdate();
+        });
+    }
+
+    /**
+     * Every edit is committed as soon as its turn comes; this waits for the
+     * queue to drain, and fails with the first edit that could not be
+     * committed since the previous flush.
+     */
+    @Override
+    public CompletableFuture<Void> flush() {
+        return CompletableFuture.runAsync(() -> {
+            String failure = firstFailure;
+            int failed = failuresSinceFlush;
+            firstFailure = null;
+            failuresSinceFlush = 0;
+            if (failure != null) {
+                throw new UncheckedIOException(new IOException(failed == 1 ? failure
+                        : failed + " edits were not stored, first: " + failure));
+            }
+        }, executor);
+    }
+
+    private void commit(String description, Work work) {
+        executor.execute(() -> {
+            if (connection == null) {
+                fail("Failed to " + description + ": the database is not open");
+                return;
+            }
+            try {
+                work.run();
+                connection.commit();
+            } catch (SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException ignored) {
+                    // the connection is gone; the edit was not committed either way
+                }
+                fail("Failed to " + description + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private void fail(String message) {
+        if (failuresSinceFlush++ == 0) {
+            firstFailure = message;
+        }
+        failures.accept(message);
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                throw new IOException("Failed to close database: " + e.getMessage(), e);
+            }
+        }
+    }
+}
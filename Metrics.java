@@ -0,0 +1,269 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.*;
+
+/**
+ * Process-wide latency histograms and counters for the paths that slow down
+ * at sites: load and save phases, lookups, searches, table updates and the
+ * FX thread's responsiveness. Recording is a handful of atomic adds, cheap
+ * enough for a single lookup, so callers keep their {@link Timer} or
+ * {@link Counter} in a static field and record unconditionally.
+ *
+ * <p>The values are published as the {@code vet:type=Metrics} MXBean and,
+ * once {@link #startReporting} is called, appended as one JSON line per
+ * interval to metrics.log, which is rolled over to metrics.log.1 and so on
+ * when it grows past a megabyte. Values are cumulative since start-up.
+ */
+public final class Metrics {
+    public static final String FILE = "metrics.log";
+    public static final String OBJECT_NAME = "vet:type=Metrics";
+    private static final long ROLL_BYTES = 1 << 20;
+    private static final int KEPT_FILES = 3;
+
+    private static final Map<String, Timer> TIMERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, Counter> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "vet-metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static Path reportFile;
+
+    private Metrics() {}
+
+    public static Timer timer(String name) {
+        return TIMERS.computeIfAbsent(name, n -> new Timer());
+    }
+
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, n -> new Counter());
+    }
+
+    /**
+     * Latency histogram with four buckets per power of two, so percentiles
+     * are within 25% of the true value at any scale.
+     */
+    public static final class Timer {
+        private static final int BUCKETS = 248;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        private Timer() {}
+
+        public void record(long nanos) {
+            nanos = Math.max(0, nanos);
+            count.increment();
+            totalNanos.add(nanos);
+            buckets.incrementAndGet(bucket(nanos));
+            if (nanos > maxNanos.get()) {
+                maxNanos.accumulateAndGet(nanos, Math::max);
+            }
+        }
+
+        /** Records the time elapsed since {@code startNanos}, a {@link System#nanoTime()} reading. */
+        public void since(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public double meanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : totalNanos.sum() / 1e6 / n;
+        }
+
+        public double maxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        /** Upper bound of the bucket holding the given fraction (0 to 1) of the recorded values. */
+        public double percentileMillis(double fraction) {
+            long n = count.sum();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(fraction * n);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= Math.max(1, rank)) {
+                    return Math.min(lowerBound(i + 1), maxNanos.get()) / 1e6;
+                }
+            }
+            return maxMillis();
+        }
+
+        private static int bucket(long nanos) {
+            if (nanos < 4) {
+                return (int) nanos;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            return (exponent - 1) * 4 + (int) ((nanos >>> (exponent - 2)) & 3);
+        }
+
+        private static long lowerBound(int bucket) {
+            if (bucket < 4) {
+                return bucket;
+            }
+            int exponent = bucket / 4 + 1;
+            return (4L + (bucket & 3)) << (exponent - 2);
+        }
+    }
+
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        private Counter() {}
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public void increment() {
+            value.increment();
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /** One line of {@link #snapshot()}; counters have no latency, so those fields are zero. */
+    public record Row(String name, boolean timer, long count, double meanMillis, double p50Millis,
+                      double p99Millis, double maxMillis) {}
+
+    public static List<Row> snapshot() {
+        List<Row> rows = new ArrayList<>(TIMERS.size() + COUNTERS.size());
+        TIMERS.forEach((name, t) -> rows.add(new Row(name, true, t.count(), t.meanMillis(),
+                t.percentileMillis(0.5), t.percentileMillis(0.99), t.maxMillis())));
+        COUNTERS.forEach((name, c) -> rows.add(new Row(name, false, c.get(), 0, 0, 0, 0)));
+        rows.sort(Comparator.comparing(Row::name));
+        return rows;
+    }
+
+    public interface MetricsMXBean {
+        Map<String, Long> getCounters();
+
+        /** "name.count", "name.meanMs", "name.p50Ms", "name.p99Ms" and "name.maxMs" for every timer. */
+        Map<String, Double> getLatencies();
+    }
+
+    private static final class Bean implements MetricsMXBean {
+        @Override
+        public Map<String, Long> getCounters() {
+            Map<String, Long> counters = new TreeMap<>();
+            COUNTERS.forEach((name, c) -> counters.put(name, c.get()));
+            return counters;
+        }
+
+        @Override
+        public Map<String, Double> getLatencies() {
+            Map<String, Double> latencies = new TreeMap<>();
+            for (Row row : snapshot()) {
+                if (row.timer()) {
+                    latencies.put(row.name() + ".count", (double) row.count());
+                    latencies.put(row.name() + ".meanMs", row.meanMillis());
+                    latencies.put(row.name() + ".p50Ms", row.p50Millis());
+                    latencies.put(row.name() + ".p99Ms", row.p99Millis());
+                    latencies.put(row.name() + ".maxMs", row.maxMillis());
+                }
+            }
+            return latencies;
+        }
+    }
+
+    /** Registers the MXBean and appends a report to {@code directory}/metrics.log every interval. */
+    public static synchronized void startReporting(Path directory, long intervalSeconds) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // registered by an earlier start in this JVM
+        } catch (JMException e) {
+            System.err.println("Failed to register metrics MXBean: " + e.getMessage());
+        }
+        if (reportFile == null) {
+            reportFile = directory.resolve(FILE);
+            SCHEDULER.scheduleAtFixedRate(Metrics::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /** Runs {@code task} on the metrics thread every {@code periodMillis}. */
+    public static void every(long periodMillis, Runnable task) {
+        SCHEDULER.scheduleAtFixedRate(task, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Writes a last report and stops the metrics thread. */
+    public static void stopReporting() throws InterruptedException {
+        SCHEDULER.execute(Metrics::report);
+        SCHEDULER.shutdown();
+        SCHEDULER.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private static synchronized void report() {
+        if (reportFile != null) {
+            appendRolling(reportFile, toJson() + "\n");
+        }
+    }
+
+    /**
+     * Appends {@code text} to a log file, first moving it to file.1 (and an
+     * existing file.1 to file.2, and so on) once it is over a megabyte.
+     */
+    static synchronized void appendRolling(Path file, String text) {
+        try {
+            if (Files.exists(file) && Files.size(file) > ROLL_BYTES) {
+                roll(file);
+            }
+            try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                out.write(text);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static void roll(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        Files.deleteIfExists(file.resolveSibling(name + "." + KEPT_FILES));
+        for (int i = KEPT_FILES - 1; i >= 1; i--) {
+            Path older = file.resolveSibling(name + "." + i);
+            if (Files.exists(older)) {
+                Files.move(older, file.resolveSibling(name + "." + (i + 1)));
+            }
+        }
+        Files.move(file, file.resolveSibling(name + ".1"));
+    }
+
+    private static String toJson() {
+        StringBuilder json = new StringBuilder("{\"time\":\"").append(Instant.now()).append("\",\"counters\":{");
+        String separator = "";
+        for (Map.Entry<String, Counter> counter : COUNTERS.entrySet()) {
+            json.append(separator).append('"').append(counter.getKey()).append("\":").append(counter.getValue().get());
+            separator = ",";
+        }
+        json.append("},\"timers\":{");
+        separator = "";
+        for (Map.Entry<String, Timer> entry : TIMERS.entrySet()) {
+            Timer t = entry.getValue();
+            json.append(separator).append('"').append(entry.getKey()).append("\":").append(String.format(Locale.ROOT,
+                    "{\"count\":%d,\"meanMs\":%.3f,\"p50Ms\":%.3f,\"p99Ms\":%.3f,\"maxMs\":%.3f}",
+                    t.count(), t.meanMillis(), t.percentileMillis(0.5), t.percentileMillis(0.99), t.maxMillis()));
+            separator = ",";
+        }
+        return json.append("}}").toString();
+    }
+}
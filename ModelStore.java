@@ -0,0 +1,318 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe home of the live owners and animals, so background jobs and
+ * the UI can change data at the same time.
+ *
+ * <p>An animal is guarded by the lock stripe of its owner, or of itself while
+ * it has none; an edit locks the stripes of everything it touches, in stripe
+ * order, and runs under the shared side of a structure lock. {@link
+ * #snapshot(Runnable)} takes the exclusive side for as long as it takes to
+ * copy the lists, so a snapshot never shows half an edit. Owners publish
+ * their pets as immutable views and animals publish their owner through a
+ * volatile field, so readers need no lock at all.
+ *
+ * <p>Each edit is passed to the recorder while its locks are held, so the
+ * recorder sees edits in commit order; it must only buffer or queue them.
+ * Notifications are queued and delivered in batches through the notifier,
+ * which for the UI is {@code Platform::runLater}; nothing on that side ever
+ * waits for a lock.
+ */
+public class ModelStore {
+    private static final int STRIPES = 64;
+    private static final Metrics.Timer LOOKUP_OWNER = Metrics.timer("lookup.owner");
+    private static final Metrics.Timer LOOKUP_ANIMAL = Metrics.timer("lookup.animal");
+
+    public sealed interface Change permits Loaded, OwnerAdded, AnimalAdded, PetAssigned, AnimalRemoved, OwnerRemoved {}
+
+    /** Everything was replaced, as after loading. */
+    public record Loaded(List<Owner> owners, List<Animal> animals) implements Change {}
+
+    public record OwnerAdded(Owner owner) implements Change {}
+
+    public record AnimalAdded(Animal animal) implements Change {}
+
+    /** The animal moved to {@code owner} from {@code previous}, which may be null. */
+    public record PetAssigned(Owner owner, Animal animal, Owner previous) implements Change {}
+
+    /** The animal was removed; {@code owner} is who owned it then, or null. */
+    public record AnimalRemoved(Animal animal, Owner owner) implements Change {}
+
+    /** The owner was removed together with its pets. */
+    public record OwnerRemoved(Owner owner, List<Animal> pets) implements Change {}
+
+    /** A consistent copy of the store, in insertion order. */
+    public record Snapshot(List<Owner> owners, List<Animal> animals, List<List<Animal>> petsByOwner) {}
+
+    private final ReentrantReadWriteLock structure = new ReentrantReadWriteLock();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final ConcurrentSkipListMap<Long, Owner> owners = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<Owner, Long> ownerPositions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Owner> ownersById = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Animal> animals = new ConcurrentSkipListMap<>();
+    private final AtomicLong nextOwnerPosition = new AtomicLong();
+
+    private final Consumer<Change> recorder;
+    private final Executor notifier;
+    private final Consumer<List<Change>> listener;
+    private final ConcurrentLinkedQueue<Change> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    public ModelStore(Consumer<Change> recorder, Executor notifier, Consumer<List<Change>> listener) {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.recorder = recorder;
+        this.notifier = notifier;
+        this.listener = listener;
+    }
+
+    /** Replaces everything without recording it, as after loading. */
+    public void load(List<Owner> loadedOwners, List<Animal> loadedAnimals) {
+        structure.writeLock().lock();
+        try {
+            owners.clear();
+            ownerPositions.clear();
+            ownersById.clear();
+            animals.clear();
+            for (Owner owner : loadedOwners) {
+                putOwner(owner);
+            }
+            for (Animal animal : loadedAnimals) {
+                animals.put(animal.getId(), animal);
+            }
+            publish(new Loaded(List.copyOf(loadedOwners), List.copyOf(loadedAnimals)));
+        } finally {
+            structure.writeLock().unlock();
+        }
+    }
+
+    public Owner ownerById(String id) {
+        long started = System.nanoTime();
+        Owner owner = ownersById.get(id);
+        LOOKUP_OWNER.since(started);
+        return owner;
+    }
+
+    public Animal animalById(long id) {
+        long started = System.nanoTime();
+        Animal animal = animals.get(id);
+        LOOKUP_ANIMAL.since(started);
+        return animal;
+    }
+
+    /**
+     * Adds the owner unless one with the same ID is already stored, checked
+     * and inserted in one step; returns whether it was added.
+     */
+    public boolean addOwner(Owner owner) {
+        boolean[] added = {false};
+        mutate(() -> identitySet(List.of(owner)), () -> {
+            if (ownersById.putIfAbsent(owner.getId(), owner) == null) {
+                position(owner);
+                commit(new OwnerAdded(owner));
+                added[0] = true;
+            }
+        });
+        return added[0];
+    }
+
+    /**
+     * Adds the animal, owned by {@code owner} unless that is null. Returns
+     * false, adding nothing, if the owner has been removed in the meantime.
+     */
+    public boolean addAnimal(Animal animal, Owner owner) {
+        boolean[] added = {false};
+        mutate(() -> identitySet(List.of(owner != null ? owner : animal)), () -> {
+            if (owner != null && !isStored(owner)) {
+                return;
+            }
+            added[0] = true;
+            animals.put(animal.getId(), animal);
+            if (owner != null) {
+                owner.addPet(animal);
+            }
+            commit(new AnimalAdded(animal));
+            if (owner != null) {
+                commit(new PetAssigned(owner, animal, null));
+            }
+        });
+        return added[0];
+    }
+
+    /**
+     * Makes {@code owner} the animal's owner. Returns false, changing
+     * nothing, if either has been removed in the meantime; both are checked
+     * under their locks, so a concurrent removal cannot slip in between.
+     */
+    public boolean assign(Owner owner, Animal animal) {
+        boolean[] assigned = {false};
+        mutate(() -> identitySet(List.of(holder(animal), owner)), () -> {
+            if (!isStored(owner) || animals.get(animal.getId()) != animal) {
+                return;
+            }
+            assigned[0] = true;
+            Owner previous = animal.getOwner();
+            if (previous != owner) {
+                owner.addPet(animal);
+                commit(new PetAssigned(owner, animal, previous));
+            }
+        });
+        return assigned[0];
+    }
+
+    public void removeAnimals(Collection<Animal> toRemove) {
+        mutate(() -> holders(toRemove), () -> {
+            Map<Owner, Set<Animal>> byOwner = new IdentityHashMap<>();
+            for (Animal animal : toRemove) {
+                if (animals.remove(animal.getId(), animal)) {
+                    Owner owner = animal.getOwner();
+                    if (owner != null) {
+                        byOwner.computeIfAbsent(owner, o -> Collections.newSetFromMap(new IdentityHashMap<>()))
+                                .add(animal);
+                    }
+                    commit(new AnimalRemoved(animal, owner));
+                }
+            }
+            byOwner.forEach(Owner::removePets);
+        });
+    }
+
+    /** Removes the owners and every pet they own. */
+    public void removeOwners(Collection<Owner> toRemove) {
+        mutate(() -> identitySet(toRemove), () -> {
+            for (Owner owner : toRemove) {
+                Long position = ownerPositions.remove(owner);
+                if (position == null) {
+                    continue;
+                }
+                owners.remove(position);
+                ownersById.remove(owner.getId(), owner);
+                List<Animal> pets = owner.getPets();
+                owner.clearPets();
+                for (Animal pet : pets) {
+                    animals.remove(pet.getId(), pet);
+                }
+                commit(new OwnerRemoved(owner, pets));
+            }
+        });
+    }
+
+    /**
+     * Copies the store while no edit is in progress. {@code whileFrozen}
+     * runs at the same point, so it can mark exactly which edits the
+     * snapshot includes (for example by rotating a journal). Every edit waits
+     * while it runs, so it must not touch the disk.
+     */
+    public Snapshot snapshot(Runnable whileFrozen) {
+        structure.writeLock().lock();
+        try {
+            whileFrozen.run();
+            List<Owner> ownerList = List.copyOf(owners.values());
+            List<List<Animal>> petsByOwner = new ArrayList<>(ownerList.size());
+            for (Owner owner : ownerList) {
+                petsByOwner.add(owner.getPets());
+            }
+            return new Snapshot(ownerList, List.copyOf(animals.values()), petsByOwner);
+        } finally {
+            structure.writeLock().unlock();
+        }
+    }
+
+    /** Whether this very owner is stored; call holding its stripe, which guards its removal. */
+    private boolean isStored(Owner owner) {
+        return ownerPositions.containsKey(owner);
+    }
+
+    private void putOwner(Owner owner) {
+        position(owner);
+        ownersById.putIfAbsent(owner.getId(), owner);
+    }
+
+    /** Appends the owner to the insertion order. */
+    private void position(Owner owner) {
+        long position = nextOwnerPosition.getAndIncrement();
+        owners.put(position, owner);
+        ownerPositions.put(owner, position);
+    }
+
+    /** The object whose stripe guards the animal: its owner, or itself while it has none. */
+    private static Object holder(Animal animal) {
+        Owner owner = animal.getOwner();
+        return owner != null ? owner : animal;
+    }
+
+    private static Set<Object> holders(Collection<Animal> animals) {
+        return identitySet(animals.stream().map(ModelStore::holder).toList());
+    }
+
+    private static Set<Object> identitySet(Collection<?> objects) {
+        Set<Object> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(objects);
+        return set;
+    }
+
+    /**
+     * Locks the stripes of the holders, then checks that no animal changed
+     * owner in the meantime; if one did, the locks are released and taken
+     * again for the new holders.
+     */
+    private void mutate(Supplier<Set<Object>> holders, Runnable edit) {
+        structure.readLock().lock();
+        try {
+            while (true) {
+                Set<Object> expected = holders.get();
+                int[] needed = expected.stream().mapToInt(ModelStore::stripeOf).distinct().sorted().toArray();
+                for (int stripe : needed) {
+                    stripes[stripe].lock();
+                }
+                try {
+                    if (holders.get().equals(expected)) {
+                        edit.run();
+                        return;
+                    }
+                } finally {
+                    for (int i = needed.length - 1; i >= 0; i--) {
+                        stripes[needed[i]].unlock();
+                    }
+                }
+            }
+        } finally {
+            structure.readLock().unlock();
+        }
+    }
+
+    private static int stripeOf(Object holder) {
+        return (System.identityHashCode(holder) & Integer.MAX_VALUE) % STRIPES;
+    }
+
+    private void commit(Change change) {
+        recorder.accept(change);
+        publish(change);
+    }
+
+    private void publish(Change change) {
+        pending.add(change);
+        if (drainScheduled.compareAndSet(false, true)) {
+            notifier.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        List<Change> batch = new ArrayList<>();
+        for (Change change; (change = pending.poll()) != null; ) {
+            batch.add(change);
+        }
+        if (!batch.isEmpty()) {
+            listener.accept(batch);
+        }
+    }
+}
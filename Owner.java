@@ -0,0 +1,98 @@
+import java.util.*;
+
+/**
+ * A pet owner. Plain Java like {@link Animal}: every change to the pet list
+ * also updates the pet's back-reference so the two never disagree. Pets are
+ * appended to a growable array and published as a read-only view of its
+ * filled part, so adding a pet costs no copy and loading an owner with many
+ * pets stays linear; a slot is only written past the end of every published
+ * view, and removals copy into a fresh array. {@link #getPets()} can
+ * therefore be read on any thread while another changes the list; changes
+ * themselves must come from one thread at a time, which {@link ModelStore}
+ * ensures for the live data.
+ */
+public class Owner {
+    private String name;
+    private String id;
+    private String phoneNumber;
+    private volatile List<Animal> pets = List.of();
+    /** Backs {@link #pets}; only the changing thread touches it. */
+    private Animal[] petSlots = new Animal[0];
+
+    public Owner() {}
+
+    public Owner(String name, String id, String phoneNumber) {
+        this.name = name;
+        this.id = id;
+        this.phoneNumber = phoneNumber;
+    }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getPhoneNumber() { return phoneNumber; }
+    public void setPhoneNumber(String phoneNumber) { this.phoneNumber = phoneNumber; }
+
+    /** The current pets; later changes do not show up in the returned list. */
+    public List<Animal> getPets() {
+        return pets;
+    }
+
+    /** Takes the animal over from its previous owner, if any. */
+    public void addPet(Animal animal) {
+        if (animal.getOwner() == this) {
+            return;
+        }
+        if (animal.getOwner() != null) {
+            animal.getOwner().removePet(animal);
+        }
+        int count = pets.size();
+        if (count == petSlots.length) {
+            petSlots = Arrays.copyOf(petSlots, Math.max(4, count * 2));
+        }
+        petSlots[count] = animal;
+        publish(count + 1);
+        animal.setOwner(this);
+    }
+
+    public void removePet(Animal animal) {
+        removePets(List.of(animal));
+    }
+
+    /** Removes several pets in one pass; pass a set for large batches. */
+    public void removePets(Collection<Animal> animals) {
+        for (Animal animal : animals) {
+            if (animal.getOwner() == this) {
+                animal.setOwner(null);
+            }
+        }
+        List<Animal> kept = new ArrayList<>(pets);
+        if (kept.removeAll(animals)) {
+            petSlots = kept.toArray(new Animal[0]);
+            publish(petSlots.length);
+        }
+    }
+
+    public void clearPets() {
+        for (Animal pet : pets) {
+            pet.setOwner(null);
+        }
+        petSlots = new Animal[0];
+        pets = List.of();
+    }
+
+    /** Publishes the first {@code count} slots; the view stays valid since those slots are never written again. */
+    private void publish(int count) {
+        pets = Collections.unmodifiableList(Arrays.asList(petSlots).subList(0, count));
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    public boolean equals(Owner other) {
+        return getName().equals(other.getName()) && getPhoneNumber().equals(other.getPhoneNumber());
+    }
+}
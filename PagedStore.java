@@ -0,0 +1,187 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Append-only store of string rows on disk, read back a page at a time.
+ * Rows are kept in {@code <name>.dat} in the binary snapshot encoding and
+ * {@code <name>.idx} holds the end offset of every row as a fixed eight-byte
+ * entry, so opening the store only looks at the index length and any page
+ * can be located without a scan. Recently read pages stay in a small LRU
+ * cache; nothing else is held in memory.
+ *
+ * <p>Rows are appended to the data file before their index entries, so a
+ * crash mid-append leaves at most unreferenced bytes behind. The size is
+ * published through a volatile field once both files are forced, and rows
+ * never change after that, so readers take no lock but the cache's and
+ * never wait for an append's fsync. A UI thread should use {@link
+ * #cached(int)} and {@link #load(int, Executor)} rather than {@link
+ * #get(int)}, which reads the disk on a cache miss.
+ *
+ * <p>Archived animals live here, and so do the rows of the Animals and
+ * Owners tables when the application runs in paged mode, where the tables
+ * are read-only. In the normal mode those tables are loaded whole into the
+ * {@link ModelStore}, because editing, search, scheduling and billing all
+ * work on the in-memory model.
+ */
+public class PagedStore implements Closeable {
+    public static final int PAGE_SIZE = 256;
+    private static final int ENTRY = Long.BYTES;
+
+    private final FileChannel data;
+    private final FileChannel index;
+    private final Map<Integer, String[][]> pages;
+    private volatile int size;
+    /** End of the data written so far; guarded by this, which only appends and close take. */
+    private long end = -1;
+
+    public PagedStore(Path directory, String name, int cachedPages) throws IOException {
+        data = FileChannel.open(directory.resolve(name + ".dat"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(directory.resolve(name + ".idx"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        size = (int) Math.min(Integer.MAX_VALUE, index.size() / ENTRY);
+        pages = new LinkedHashMap<>(cachedPages * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String[][]> eldest) {
+                return size() > cachedPages;
+            }
+        };
+    }
+
+    /** Deletes the files of the named store, which must not be open. */
+    public static void delete(Path directory, String name) throws IOException {
+        Files.deleteIfExists(directory.resolve(name + ".dat"));
+        Files.deleteIfExists(directory.resolve(name + ".idx"));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** The row, read from disk if its page is not cached. */
+    public String[] get(int row) {
+        Objects.checkIndex(row, size);
+        String[] cached = cached(row);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            return readPage(row / PAGE_SIZE)[row % PAGE_SIZE];
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** The row if its page is cached, otherwise null; never touches the disk. */
+    public String[] cached(int row) {
+        Objects.checkIndex(row, size);
+        String[][] rows;
+        synchronized (pages) {
+            rows = pages.get(row / PAGE_SIZE);
+        }
+        return rows != null && rows.length > row % PAGE_SIZE ? rows[row % PAGE_SIZE] : null;
+    }
+
+    /** Reads the page into the cache on {@code executor}; pages past the end are skipped. */
+    public CompletableFuture<Void> load(int page, Executor executor) {
+        return CompletableFuture.runAsync(() -> {
+            if (page >= 0 && page * PAGE_SIZE < size) {
+                try {
+                    readPage(page);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }, executor);
+    }
+
+    /** Appends the rows and makes them durable before they become visible. */
+    public synchronized void append(List<String[]> rows) throws IOException {
+        if (end < 0) {
+            end = size == 0 ? 0 : readOffsets(size - 1, 1)[0];
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        BinaryFormat.Writer out = new BinaryFormat.Writer(encoded);
+        ByteBuffer entries = ByteBuffer.allocate(rows.size() * ENTRY);
+        for (String[] row : rows) {
+            out.writeVarint(row.length);
+            for (String field : row) {
+                out.writeString(field);
+            }
+            out.flush();
+            entries.putLong(end + encoded.size());
+        }
+
+        writeFully(data, ByteBuffer.wrap(encoded.toByteArray()), end);
+        data.force(false);
+        entries.flip();
+        writeFully(index, entries, (long) size * ENTRY);
+        index.force(false);
+        end += encoded.size();
+        size += rows.size();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer bytes, long position) throws IOException {
+        while (bytes.hasRemaining()) {
+            position += channel.write(bytes, position);
+        }
+    }
+
+    /** Reads the page and caches it. */
+    private String[][] readPage(int page) throws IOException {
+        int first = page * PAGE_SIZE;
+        int count = Math.min(PAGE_SIZE, size - first);
+        long start = first == 0 ? 0 : readOffsets(first - 1, 1)[0];
+        long[] ends = readOffsets(first, count);
+
+        ByteBuffer bytes = ByteBuffer.allocate((int) (ends[count - 1] - start));
+        while (bytes.hasRemaining()) {
+            if (data.read(bytes, start + bytes.position()) < 0) {
+                throw new EOFException("Store data is shorter than its index");
+            }
+        }
+        bytes.flip();
+        BinaryFormat.Reader in = new BinaryFormat.Reader(bytes);
+        String[][] rows = new String[count][];
+        for (int i = 0; i < count; i++) {
+            String[] row = new String[in.readCount()];
+            for (int f = 0; f < row.length; f++) {
+                row[f] = in.readString();
+            }
+            rows[i] = row;
+        }
+        synchronized (pages) {
+            String[][] cached = pages.get(page);
+            if (cached == null || cached.length < rows.length) {
+                pages.put(page, rows);
+            }
+        }
+        return rows;
+    }
+
+    private long[] readOffsets(int first, int count) throws IOException {
+        ByteBuffer entries = ByteBuffer.allocate(count * ENTRY);
+        while (entries.hasRemaining()) {
+            if (index.read(entries, (long) first * ENTRY + entries.position()) < 0) {
+                throw new EOFException("Store index is truncated");
+            }
+        }
+        entries.flip();
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = entries.getLong();
+        }
+        return offsets;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        data.close();
+        index.close();
+    }
+}
@@ -0,0 +1,292 @@
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.LongFunction;
+
+/**
+ * Prices of services, from a rule table keyed by species, breed, the
+ * indoor/can-fly flag and service. Amounts are whole halalas (1/100 SAR).
+ *
+ * <p>The rules are compiled once into arrays indexed by species, flag and
+ * service, plus a small table per breed that has rules of its own, so a
+ * quote is two array reads and at most one hash lookup. When several rules
+ * match, the most specific wins (breed, then flag, then service), and
+ * among equally specific rules the later one. Each quote's display text is
+ * formatted at compile time too, so showing a price builds no strings.
+ *
+ * <p>Rules are read from pricing.txt in the working directory when it
+ * exists, one "species,breed,flag,service,amount,note" line per rule with
+ * {@code *} for any value; otherwise {@link #defaultRules()} applies.
+ */
+public final class Pricing {
+    public static final String FILE = "pricing.txt";
+    /** The service whose price {@link Animal#getPrice()} shows. */
+    public static final String STANDARD_SERVICE = "Checkup";
+
+    private static final String[] SPECIES = {"Dog", "Cat", "Bird"};
+    private static final String ANY = "*";
+    private static final Metrics.Timer BILLING_TIME = Metrics.timer("billing.invoices");
+
+    /** A rule; null breed, flag or service matches any value. */
+    public record Rule(String species, String breed, Boolean flag, String service, long amount, String note) {}
+
+    /** A price and its display text, such as "Price: 150 SAR (indoor discount)". */
+    public record Quote(long amount, String note, String label) {}
+
+    public record InvoiceLine(LocalDate date, long animalId, String patient, String service, long amount) {}
+
+    /** The visits billed to one owner, or to one animal that has no owner. */
+    public record Invoice(String billedTo, List<InvoiceLine> lines, long total) {}
+
+    private static final class Holder {
+        static final Pricing CURRENT = load(Path.of("").toAbsolutePath().resolve(FILE));
+    }
+
+    private final List<String> services;
+    private final Map<String, Integer> serviceIndex = new HashMap<>();
+    private final Quote[][][] bySpecies;
+    private final Map<String, Quote[][]> dogBreeds = new HashMap<>();
+
+    public Pricing(List<Rule> rules) {
+        LinkedHashSet<String> names = new LinkedHashSet<>(Scheduler.SERVICES.keySet());
+        for (Rule rule : rules) {
+            if (rule.service() != null) {
+                names.add(rule.service());
+            }
+        }
+        services = List.copyOf(names);
+        for (int i = 0; i < services.size(); i++) {
+            serviceIndex.put(services.get(i), i);
+        }
+        bySpecies = new Quote[SPECIES.length][][];
+        for (int species = 0; species < SPECIES.length; species++) {
+            bySpecies[species] = compile(rules, SPECIES[species], null);
+        }
+        for (Rule rule : rules) {
+            if (rule.breed() != null && SPECIES[0].equals(rule.species())) {
+                dogBreeds.computeIfAbsent(rule.breed(), breed -> compile(rules, SPECIES[0], breed));
+            }
+        }
+    }
+
+    /** The price text shown in an animal's details. */
+    public static String label(Quote quote) {
+        return quote != null ? quote.label() : "Price: on request";
+    }
+
+    /** The rules from pricing.txt, or the defaults; read on first use. */
+    public static Pricing current() {
+        return Holder.CURRENT;
+    }
+
+    /** Services with at least one price, in booking order. */
+    public List<String> services() {
+        return services;
+    }
+
+    /** The animal's price for the service, or null if no rule covers it. */
+    public Quote quote(Animal animal, String service) {
+        String breed = animal instanceof Dog dog ? dog.getBreed() : null;
+        boolean flag = animal instanceof Cat cat ? cat.isIndoor() : animal instanceof Bird bird && bird.isCanFly();
+        return quote(animal.getType(), breed, flag, service);
+    }
+
+    /**
+     * The price for an animal given by its fields, as {@link CompactRoster}
+     * stores them: the breed is only used for dogs, the flag only for cats
+     * and birds.
+     */
+    public Quote quote(String type, String breed, boolean indoorOrCanFly, String service) {
+        Integer column = serviceIndex.get(service);
+        if (column == null) {
+            return null;
+        }
+        int flag = indoorOrCanFly && !"Dog".equals(type) ? 1 : 0;
+        if ("Dog".equals(type) && breed != null) {
+            Quote[][] byBreed = dogBreeds.get(breed);
+            if (byBreed != null) {
+                return byBreed[flag][column];
+            }
+        }
+        int species = switch (type) {
+            case "Dog" -> 0;
+            case "Cat" -> 1;
+            default -> 2;
+        };
+        return bySpecies[species][flag][column];
+    }
+
+    /**
+     * Bills the visits, appointments that were checked in, as returned by
+     * {@link Scheduler#visits}: one invoice per owner (or per animal without
+     * one), lines in date order. Visits whose animal is gone or has no price
+     * for the service are left out and listed in {@code skipped}.
+     */
+    public List<Invoice> invoices(List<Scheduler.Appointment> visits, LongFunction<? extends Animal> animals,
+                                  List<String> skipped) {
+        long started = System.nanoTime();
+        List<Scheduler.Appointment> ordered = new ArrayList<>(visits);
+        ordered.sort(Comparator.comparing(Scheduler.Appointment::start));
+        Map<String, List<InvoiceLine>> byPayer = new LinkedHashMap<>();
+        for (Scheduler.Appointment appointment : ordered) {
+            Animal animal = animals.apply(appointment.animalId());
+            Quote quote = animal != null ? quote(animal, appointment.service()) : null;
+            if (quote == null) {
+                skipped.add("Appointment " + appointment.id() + " (" + appointment.service() + " for "
+                        + appointment.patient() + "): " + (animal == null ? "animal no longer registered"
+                        : "no price for this service"));
+                continue;
+            }
+            Owner owner = animal.getOwner();
+            String payer = owner != null ? owner.getId() : "animal " + animal.getId();
+            byPayer.computeIfAbsent(payer, p -> new ArrayList<>()).add(new InvoiceLine(
+                    appointment.start().toLocalDate(), animal.getId(), animal.getName(), appointment.service(),
+                    quote.amount()));
+        }
+        List<Invoice> invoices = new ArrayList<>(byPayer.size());
+        byPayer.forEach((payer, lines) -> {
+            long total = 0;
+            for (InvoiceLine line : lines) {
+                total += line.amount();
+            }
+            invoices.add(new Invoice(payer, List.copyOf(lines), total));
+        });
+        BILLING_TIME.since(started);
+        return invoices;
+    }
+
+    /**
+     * Writes the invoices as CSV, one line per visit followed by a total line
+     * per invoice. Names are quoted as RFC 4180 asks when they hold a comma,
+     * a quote or a line break.
+     */
+    public static void writeCsv(List<Invoice> invoices, Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("billedTo,date,animalId,patient,service,amountSar\n");
+            for (Invoice invoice : invoices) {
+                String billedTo = RecordReader.escape(invoice.billedTo());
+                for (InvoiceLine line : invoice.lines()) {
+                    out.write(billedTo + "," + line.date() + "," + line.animalId() + ","
+                            + RecordReader.escape(line.patient()) + "," + RecordReader.escape(line.service()) + ","
+                            + formatAmount(line.amount()) + "\n");
+                }
+                out.write(billedTo + ",,,,TOTAL," + formatAmount(invoice.total()) + "\n");
+            }
+        }
+    }
+
+    /** 25000 halalas as "250", 25050 as "250.50". */
+    public static String formatAmount(long halalas) {
+        long sar = halalas / 100;
+        long rest = Math.abs(halalas % 100);
+        return rest == 0 ? Long.toString(sar) : sar + "." + (rest < 10 ? "0" : "") + rest;
+    }
+
+    /** The best rule for each flag and service of the species (and breed, when given). */
+    private Quote[][] compile(List<Rule> rules, String species, String breed) {
+        Quote[][] table = new Quote[2][services.size()];
+        int[][] best = new int[2][services.size()];
+        for (int[] row : best) {
+            Arrays.fill(row, -1);
+        }
+        for (Rule rule : rules) {
+            if (!rule.species().equals(species) || (rule.breed() != null && !rule.breed().equals(breed))) {
+                continue;
+            }
+            int specificity = (rule.breed() != null ? 4 : 0) + (rule.flag() != null ? 2 : 0)
+                    + (rule.service() != null ? 1 : 0);
+            for (int flag = 0; flag < 2; flag++) {
+                if (rule.flag() != null && rule.flag() != (flag == 1)) {
+                    continue;
+                }
+                for (int column = 0; column < services.size(); column++) {
+                    if ((rule.service() == null || rule.service().equals(services.get(column)))
+                            && specificity >= best[flag][column]) {
+                        best[flag][column] = specificity;
+                        String label = "Price: " + formatAmount(rule.amount()) + " SAR"
+                                + (rule.note().isEmpty() ? "" : " (" + rule.note() + ")");
+                        table[flag][column] = new Quote(rule.amount(), rule.note(), label);
+                    }
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Reads the rules from {@code file}, or uses the defaults if it does not
+     * exist or holds no usable rule. Bad lines are reported on stderr.
+     */
+    public static Pricing load(Path file) {
+        List<Rule> rules = new ArrayList<>();
+        if (Files.exists(file)) {
+            try (RecordReader record = new RecordReader(file.toFile())) {
+                while (record.next()) {
+                    if (record.fieldCount() < 5 || record.field(0).startsWith("#")) {
+                        continue;
+                    }
+                    try {
+                        rules.add(parseRule(record));
+                    } catch (NumberFormatException e) {
+                        System.err.println(record.location() + ": " + e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to read " + file.getFileName() + ", using default prices: "
+                        + e.getMessage());
+            }
+        }
+        return new Pricing(rules.isEmpty() ? defaultRules() : rules);
+    }
+
+    private static Rule parseRule(RecordReader record) {
+        String species = record.field(0);
+        if (!Arrays.asList(SPECIES).contains(species)) {
+            throw new NumberFormatException("unknown species '" + species + "'");
+        }
+        String flag = record.field(2);
+        long amount;
+        try {
+            amount = new BigDecimal(record.field(4)).movePointRight(2).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("amount has more than two decimals: " + record.field(4));
+        }
+        return new Rule(species, wildcard(record.field(1)), ANY.equals(flag) ? null : Boolean.parseBoolean(flag),
+                wildcard(record.field(3)), amount, record.fieldCount() > 5 ? record.field(5) : "");
+    }
+
+    private static String wildcard(String value) {
+        return ANY.equals(value) || value.isEmpty() ? null : value;
+    }
+
+    /**
+     * The clinic's list prices. The checkup prices keep the old price bands:
+     * large dog breeds pay the top of the dog band, indoor cats and flying
+     * birds the bottom of theirs.
+     */
+    public static List<Rule> defaultRules() {
+        List<Rule> rules = new ArrayList<>();
+        addSpecies(rules, "Dog", 25000, 12000, 18000, 40000, 150000, 60000);
+        for (String breed : List.of("Husky", "German Shepherd", "Great Dane", "Labrador", "Rottweiler")) {
+            rules.add(new Rule("Dog", breed, null, STANDARD_SERVICE, 30000, ""));
+        }
+        addSpecies(rules, "Cat", 20000, 10000, 15000, 35000, 120000, 50000);
+        rules.add(new Rule("Cat", null, true, STANDARD_SERVICE, 15000, "indoor discount"));
+        addSpecies(rules, "Bird", 10000, 8000, 6000, 9000, 80000, 40000);
+        rules.add(new Rule("Bird", null, false, STANDARD_SERVICE, 15000, "extra care needed"));
+        return rules;
+    }
+
+    private static void addSpecies(List<Rule> rules, String species, long checkup, long vaccination, long grooming,
+                                   long dental, long surgery, long emergency) {
+        rules.add(new Rule(species, null, null, "Checkup", checkup, ""));
+        rules.add(new Rule(species, null, null, "Vaccination", vaccination, ""));
+        rules.add(new Rule(species, null, null, "Grooming", grooming, ""));
+        rules.add(new Rule(species, null, null, "Dental", dental, ""));
+        rules.add(new Rule(species, null, null, "Surgery", surgery, ""));
+        rules.add(new Rule(species, null, null, "Emergency", emergency, ""));
+    }
+}
@@ -0,0 +1,285 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming reader for the comma separated data files. Each call to
+ * {@link #next()} loads one line into a reused buffer and records where its
+ * fields start and end, so numbers, booleans and type tags can be read
+ * without splitting the line or allocating intermediate strings.
+ *
+ * <p>A field that starts with a double quote runs to the matching closing
+ * quote, as in RFC 4180: it may hold commas and line breaks, and a doubled
+ * quote stands for one. {@link #escape(String)} writes fields that way.
+ */
+public class RecordReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader in;
+    private final String source;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private char[] line = new char[256];
+    private int lineLength;
+    private int[] fieldStarts = new int[8];
+    private int[] fieldEnds = new int[8];
+    private int fieldCount;
+    private long lineNumber;
+    private long nextLineNumber;
+
+    public RecordReader(File file) throws IOException {
+        this(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), file.getName());
+    }
+
+    public RecordReader(Reader in, String source) {
+        this(in, source, 0);
+    }
+
+    /** Reads a block cut from a larger file; line numbers continue after {@code linesBefore}. */
+    public RecordReader(Reader in, String source, long linesBefore) {
+        this.in = in;
+        this.source = source;
+        this.lineNumber = linesBefore;
+        this.nextLineNumber = linesBefore + 1;
+    }
+
+    /**
+     * The field as it must be written for this reader to return it
+     * unchanged: quoted, with quotes doubled, when it holds a comma, a quote
+     * or a line break, and as is otherwise.
+     */
+    public static String escape(String field) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + field.replace("\"", "\"\"") + '"';
+            }
+        }
+        return field;
+    }
+
+    /**
+     * Index just past the last line break in {@code text[0, length)} that
+     * ends a record, or 0 if none does, for cutting text into blocks of whole
+     * records. The text must start at a record. Line breaks inside quoted
+     * fields are skipped by the same rules {@link #next()} reads them with.
+     */
+    public static int lastRecordEnd(char[] text, int length) {
+        int end = 0;
+        boolean fieldStart = true;
+        boolean quoted = false;
+        boolean closedQuote = false;
+        for (int i = 0; i < length; i++) {
+            char c = text[i];
+            if (c == '"') {
+                if (quoted) {
+                    quoted = false;
+                    closedQuote = true;
+                } else if (fieldStart || closedQuote) {
+                    quoted = true;
+                    closedQuote = false;
+                }
+                fieldStart = false;
+            } else if (c == '\n' && !quoted) {
+                end = i + 1;
+                fieldStart = true;
+                closedQuote = false;
+            } else {
+                fieldStart = !quoted && c == ',';
+                closedQuote = false;
+            }
+        }
+        return end;
+    }
+
+    /** Advances to the next record, returning false at end of input. */
+    public boolean next() throws IOException {
+        lineLength = 0;
+        fieldCount = 0;
+        lineNumber = nextLineNumber;
+        boolean sawAny = false;
+        boolean fieldStart = true;
+        boolean quoted = false;
+        boolean closedQuote = false;
+        while (true) {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    if (!sawAny) {
+                        return false;
+                    }
+                    break;
+                }
+            }
+            sawAny = true;
+            char c = buffer[position++];
+            if (c == '"') {
+                if (quoted) {
+                    quoted = false;
+                    closedQuote = true;
+                } else if (fieldStart || closedQuote) {
+                    quoted = true;
+                    closedQuote = false;
+                }
+                fieldStart = false;
+            } else {
+                if (c == '\n') {
+                    nextLineNumber++;
+                    if (!quoted) {
+                        break;
+                    }
+                }
+                fieldStart = !quoted && c == ',';
+                closedQuote = false;
+            }
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = c;
+        }
+        if (lineLength > 0 && line[lineLength - 1] == '\r' && !quoted) {
+            lineLength--;
+        }
+        splitFields();
+        return true;
+    }
+
+    /**
+     * Records the field bounds, unquoting quoted fields in place. Unquoting
+     * only ever shortens a field, so the text is moved down within the line
+     * buffer and nothing is allocated.
+     */
+    private void splitFields() {
+        if (lineLength == 0) {
+            return;
+        }
+        int read = 0;
+        int write = 0;
+        while (true) {
+            int start = write;
+            boolean quoted = read < lineLength && line[read] == '"';
+            if (quoted) {
+                read++;
+            }
+            while (read < lineLength) {
+                char c = line[read];
+                if (quoted && c == '"') {
+                    read++;
+                    if (read < lineLength && line[read] == '"') {
+                        line[write++] = '"';
+                        read++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (!quoted && c == ',') {
+                    break;
+                } else {
+                    line[write++] = c;
+                    read++;
+                }
+            }
+            if (fieldCount == fieldStarts.length) {
+                fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+                fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+            }
+            fieldStarts[fieldCount] = start;
+            fieldEnds[fieldCount] = write;
+            fieldCount++;
+            if (read == lineLength) {
+                return;
+            }
+            read++;
+        }
+    }
+
+    /** Number of fields on the current line; zero for a blank line. */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    public String field(int index) {
+        checkIndex(index);
+        return new String(line, fieldStarts[index], fieldEnds[index] - fieldStarts[index]);
+    }
+
+    public boolean fieldEquals(int index, String value) {
+        checkIndex(index);
+        int start = fieldStarts[index];
+        int length = fieldEnds[index] - start;
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int intField(int index) {
+        long value = longField(index);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("value out of range in field " + (index + 1));
+        }
+        return (int) value;
+    }
+
+    public long longField(int index) {
+        checkIndex(index);
+        int start = fieldStarts[index];
+        int end = fieldEnds[index];
+        boolean negative = false;
+        if (start < end && (line[start] == '-' || line[start] == '+')) {
+            negative = line[start] == '-';
+            start++;
+        }
+        if (start == end || end - start > 18) {
+            throw new NumberFormatException("invalid number '" + field(index) + "' in field " + (index + 1));
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("invalid number '" + field(index) + "' in field " + (index + 1));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /** Same rule as {@link Boolean#parseBoolean(String)}: "true" in any case, anything else is false. */
+    public boolean booleanField(int index) {
+        checkIndex(index);
+        int start = fieldStarts[index];
+        if (fieldEnds[index] - start != 4) {
+            return false;
+        }
+        return (line[start] | 0x20) == 't' && (line[start + 1] | 0x20) == 'r'
+                && (line[start + 2] | 0x20) == 'u' && (line[start + 3] | 0x20) == 'e';
+    }
+
+    public long lineNumber() {
+        return lineNumber;
+    }
+
+    /** "file:line" of the current record, for error reports. */
+    public String location() {
+        return source + ":" + lineNumber;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new NumberFormatException("missing field " + (index + 1));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,96 @@
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Measures the heap taken by a large roster held as animal objects versus
+ * the same roster in a {@link CompactRoster}.
+ *
+ * <pre>
+ * java -Xmx1g RosterFootprint [rows]
+ * </pre>
+ *
+ * Rows are generated the way a file load produces them: every name, breed
+ * and owner field is a fresh string, names and breeds repeat as they do in
+ * real rosters, one owner has three pets on average, and the archive date
+ * changes every {@link #ROWS_PER_DAY} rows. Each representation
+ * is built alone and measured as the growth of the used heap after a full GC.
+ */
+public class RosterFootprint {
+    private static final String[] NAMES = names(2000);
+    private static final String[] BREEDS = {"Labrador", "Poodle", "Beagle", "Husky", "Boxer", "Pug", "Collie",
+            "Dachshund", "Terrier", "Mixed"};
+    private static final int ROWS_PER_DAY = 500;
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        long before = usedHeap();
+        List<Animal> animals = buildObjects(rows);
+        long objectBytes = usedHeap() - before;
+        int objectRows = animals.size();
+        animals = null;
+
+        before = usedHeap();
+        CompactRoster roster = buildCompact(rows);
+        long compactBytes = usedHeap() - before;
+        int compactRows = roster.size();
+
+        System.out.printf("%,d animals%n", rows);
+        System.out.printf("objects: %,d bytes (%.1f per animal)%n", objectBytes, (double) objectBytes / objectRows);
+        System.out.printf("compact: %,d bytes (%.1f per animal, %,d pooled strings)%n", compactBytes,
+                (double) compactBytes / compactRows, roster.pooledStrings());
+        System.out.printf("compact is %.1fx smaller%n", (double) objectBytes / compactBytes);
+    }
+
+    private static List<Animal> buildObjects(int rows) {
+        List<Animal> animals = new ArrayList<>(rows);
+        Owner owner = null;
+        for (int i = 0; i < rows; i++) {
+            if (i % 3 == 0) {
+                owner = new Owner(fresh("Owner " + i / 3), fresh("O" + i / 3), fresh("555-" + i / 3));
+            }
+            Animal animal = switch (i % 3) {
+                case 0 -> new Dog(i, fresh(NAMES[i % NAMES.length]), i % 20, fresh(BREEDS[i % BREEDS.length]));
+                case 1 -> new Cat(i, fresh(NAMES[i % NAMES.length]), i % 20, i % 2 == 0);
+                default -> new Bird(i, fresh(NAMES[i % NAMES.length]), i % 20, true);
+            };
+            owner.addPet(animal);
+            animals.add(animal);
+        }
+        return animals;
+    }
+
+    private static CompactRoster buildCompact(int rows) {
+        CompactRoster roster = new CompactRoster(rows);
+        for (int i = 0; i < rows; i++) {
+            String type = i % 3 == 0 ? "Dog" : i % 3 == 1 ? "Cat" : "Bird";
+            String breed = i % 3 == 0 ? fresh(BREEDS[i % BREEDS.length]) : null;
+            boolean flag = i % 3 == 1 ? i % 2 == 0 : i % 3 == 2;
+            roster.add(i, type, fresh(NAMES[i % NAMES.length]), i % 20, breed, flag,
+                    fresh("Owner " + i / 3), fresh("O" + i / 3),
+                    fresh(LocalDate.of(2020, 1, 1).plusDays(i / ROWS_PER_DAY).toString()));
+        }
+        return roster;
+    }
+
+    /** A new string instance, as a parser would produce. */
+    private static String fresh(String value) {
+        return new String(value.toCharArray());
+    }
+
+    private static String[] names(int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = "Pet" + Integer.toString(i * 7919, 36);
+        }
+        return names;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,574 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+/**
+ * Appointment book and walk-in queue for the clinic's vets and rooms.
+ *
+ * <p>Every vet and every room has a calendar: a TreeMap from start minute to
+ * appointment. Appointments in one calendar never overlap, so the only ones
+ * that can clash with a new booking are the one starting at or before it
+ * and the one starting after it, and a conflict check is two O(log n) map
+ * lookups however many appointments the year holds. Each calendar also
+ * indexes its free gaps by every service length they can hold within
+ * opening hours, so the first slot that fits is one O(log n) lookup too,
+ * however many booked appointments or days lie before it. A booking that
+ * needs a vet and a room alternates between the two calendars only while
+ * each is free when the other is not.
+ *
+ * <p>Walk-ins wait in a priority queue, emergencies first and otherwise in
+ * order of arrival, and are booked into the earliest slot when a vet calls
+ * the next one.
+ *
+ * <p>All state is confined to the executor passed in, which must run one
+ * task at a time; every method hands its work to it and returns a future,
+ * so the UI never waits on a booking. Bookings, check-ins and cancellations
+ * are appended to appointments.txt; the walk-in queue only lives as long as
+ * the session, like the waiting room. An appointment is a visit once it is
+ * checked in, and only visits are billed.
+ */
+public class Scheduler implements Closeable {
+    public static final String FILE = "appointments.txt";
+    public static final LocalTime OPENS = LocalTime.of(8, 0);
+    public static final LocalTime CLOSES = LocalTime.of(18, 0);
+
+    /** Services that can be booked, with how long they take. */
+    public static final Map<String, Duration> SERVICES = servicesInOrder();
+
+    private static final Metrics.Timer BOOK_TIME = Metrics.timer("schedule.book");
+    private static final Metrics.Timer SLOT_TIME = Metrics.timer("schedule.findSlot");
+
+    public enum Priority { EMERGENCY, URGENT, ROUTINE }
+
+    public record Appointment(long id, long animalId, String patient, String service, String vet, String room,
+                              LocalDateTime start, LocalDateTime end) {}
+
+    public record WalkIn(long arrival, long animalId, String patient, String service, Priority priority) {}
+
+    private final Path file;
+    private final LongFunction<? extends Animal> patients;
+    private final ExecutorService executor;
+    private final List<String> vets;
+    private final List<String> rooms;
+    private final Map<String, Calendar> vetCalendars = new HashMap<>();
+    private final Map<String, Calendar> roomCalendars = new HashMap<>();
+    private final Map<Long, Appointment> byId = new HashMap<>();
+    private final Set<Long> checkedIn = new HashSet<>();
+    private final PriorityQueue<WalkIn> walkIns = new PriorityQueue<>(
+            Comparator.comparing(WalkIn::priority).thenComparingLong(WalkIn::arrival));
+    private long nextId = 1;
+    private long arrivals;
+    private Writer out;
+
+    /**
+     * @param patients finds the animal with an ID, or returns null once it is gone
+     * @param executor single-threaded; owns the scheduler's state from now on
+     */
+    public Scheduler(Path directory, List<String> vets, List<String> rooms, LongFunction<? extends Animal> patients,
+                     ExecutorService executor) {
+        for (String name : concat(vets, rooms)) {
+            if (name.isBlank() || name.contains(",")) {
+                throw new IllegalArgumentException("Vet and room names must be non-blank and without commas: " + name);
+            }
+        }
+        this.file = directory.resolve(FILE);
+        this.vets = List.copyOf(vets);
+        this.rooms = List.copyOf(rooms);
+        this.patients = patients;
+        this.executor = executor;
+        for (String vet : vets) {
+            vetCalendars.put(vet, new Calendar());
+        }
+        for (String room : rooms) {
+            roomCalendars.put(room, new Calendar());
+        }
+    }
+
+    public List<String> vets() {
+        return vets;
+    }
+
+    public List<String> rooms() {
+        return rooms;
+    }
+
+    /**
+     * Reads appointments.txt; call once the animals are loaded so patients
+     * can be named. Completes with the lines that could not be used.
+     */
+    public CompletableFuture<List<String>> load() {
+        return run(() -> {
+            List<String> problems = new ArrayList<>();
+            if (Files.exists(file)) {
+                try (RecordReader record = new RecordReader(file.toFile())) {
+                    while (record.next()) {
+                        try {
+                            replay(record, problems);
+                        } catch (NumberFormatException | DateTimeException e) {
+                            problems.add(record.location() + ": " + e.getMessage());
+                        }
+                    }
+                } catch (IOException e) {
+                    problems.add("Failed to read " + FILE + ": " + e.getMessage());
+                }
+            }
+            try {
+                out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                problems.add("Failed to open " + FILE + ", bookings will not be kept: " + e.getMessage());
+            }
+            return problems;
+        });
+    }
+
+    private void replay(RecordReader record, List<String> problems) {
+        if (record.fieldEquals(0, "BOOK") && record.fieldCount() >= 8) {
+            long id = record.longField(1);
+            long animalId = record.longField(2);
+            LocalDateTime start = fromMinute(record.longField(6));
+            Appointment appointment = new Appointment(id, animalId, patientName(animalId), record.field(3),
+                    record.field(4), record.field(5), start, start.plusMinutes(record.intField(7)));
+            nextId = Math.max(nextId, id + 1);
+            if (!vetCalendars.containsKey(appointment.vet()) || !roomCalendars.containsKey(appointment.room())) {
+                problems.add(record.location() + ": unknown vet or room, appointment " + id + " dropped");
+            } else if (clash(appointment.vet(), appointment.room(), start, appointment.end()) != null) {
+                problems.add(record.location() + ": appointment " + id + " overlaps another and was dropped");
+            } else {
+                put(appointment);
+            }
+        } else if (record.fieldEquals(0, "CHECKIN") && record.fieldCount() >= 2) {
+            long id = record.longField(1);
+            if (byId.containsKey(id)) {
+                checkedIn.add(id);
+            }
+        } else if (record.fieldEquals(0, "CANCEL") && record.fieldCount() >= 2) {
+            Appointment appointment = byId.get(record.longField(1));
+            if (appointment != null) {
+                remove(appointment);
+            }
+        } else {
+            throw new NumberFormatException("unrecognised appointment record");
+        }
+    }
+
+    /**
+     * Books the service at {@code start}, failing with an
+     * IllegalStateException naming the clash if the vet or room is taken.
+     */
+    public CompletableFuture<Appointment> book(Animal animal, String service, String vet, String room,
+                                               LocalDateTime start) {
+        long animalId = animal.getId();
+        String patient = animal.getName();
+        return run(() -> {
+            long started = System.nanoTime();
+            LocalDateTime from = start.truncatedTo(ChronoUnit.MINUTES);
+            LocalDateTime end = from.plus(duration(service));
+            checkResources(vet, room);
+            if (from.toLocalTime().isBefore(OPENS) || end.toLocalTime().isAfter(CLOSES)
+                    || !end.toLocalDate().equals(from.toLocalDate())) {
+                throw new IllegalStateException("The clinic is open " + OPENS + " to " + CLOSES);
+            }
+            Appointment clash = clash(vet, room, from, end);
+            if (clash != null) {
+                throw new IllegalStateException(describeClash(clash, vet));
+            }
+            Appointment appointment = add(animalId, patient, service, vet, room, from);
+            BOOK_TIME.since(started);
+            return appointment;
+        });
+    }
+
+    /** The earliest start at or after {@code from}, within opening hours, when both the vet and the room are free. */
+    public CompletableFuture<LocalDateTime> findSlot(String service, String vet, String room, LocalDateTime from) {
+        return run(() -> {
+            checkResources(vet, room);
+            return earliestSlot(vet, room, from, duration(service));
+        });
+    }
+
+    /** Cancels the appointment; a visit that was checked in cannot be cancelled. */
+    public CompletableFuture<Void> cancel(Appointment appointment) {
+        return run(() -> {
+            if (checkedIn.contains(appointment.id())) {
+                throw new IllegalStateException(appointment.patient()
+                        + " was checked in; the visit cannot be cancelled");
+            }
+            if (byId.get(appointment.id()) == appointment) {
+                remove(appointment);
+                write("CANCEL," + appointment.id());
+            }
+            return null;
+        });
+    }
+
+    /** The vet's appointments starting on {@code date}, in time order. */
+    public CompletableFuture<List<Appointment>> day(String vet, LocalDate date) {
+        return run(() -> {
+            Calendar calendar = vetCalendars.get(vet);
+            if (calendar == null) {
+                return List.of();
+            }
+            return List.copyOf(calendar.appointments.subMap(toMinute(date.atStartOfDay()), toMinute(date.plusDays(1)
+                    .atStartOfDay())).values());
+        });
+    }
+
+    /** Every appointment starting in [from, to), across all vets. */
+    public CompletableFuture<List<Appointment>> between(LocalDateTime from, LocalDateTime to) {
+        return run(() -> {
+            List<Appointment> found = new ArrayList<>();
+            for (Calendar calendar : vetCalendars.values()) {
+                found.addAll(calendar.appointments.subMap(toMinute(from), toMinute(to)).values());
+            }
+            return found;
+        });
+    }
+
+    /** The appointments starting in [from, to) that were checked in, across all vets. */
+    public CompletableFuture<List<Appointment>> visits(LocalDateTime from, LocalDateTime to) {
+        return run(() -> {
+            List<Appointment> found = new ArrayList<>();
+            for (Calendar calendar : vetCalendars.values()) {
+                for (Appointment appointment : calendar.appointments.subMap(toMinute(from), toMinute(to)).values()) {
+                    if (checkedIn.contains(appointment.id())) {
+                        found.add(appointment);
+                    }
+                }
+            }
+            return found;
+        });
+    }
+
+    /** Adds the animal to the walk-in queue. */
+    public CompletableFuture<Void> walkIn(Animal animal, String service, Priority priority) {
+        long animalId = animal.getId();
+        String patient = animal.getName();
+        return run(() -> {
+            duration(service);
+            walkIns.add(new WalkIn(arrivals++, animalId, patient, service, priority));
+            return null;
+        });
+    }
+
+    /** The walk-in queue, next to be seen first. */
+    public CompletableFuture<List<WalkIn>> waiting() {
+        return run(() -> {
+            List<WalkIn> queue = new ArrayList<>(walkIns);
+            queue.sort(walkIns.comparator());
+            return queue;
+        });
+    }
+
+    /**
+     * Books the first walk-in in the queue with the vet in the earliest free
+     * slot from {@code now}; completes with null if nobody is waiting. The
+     * walk-in leaves the queue only once the booking is made, so a failed
+     * booking keeps their place.
+     */
+    public CompletableFuture<Appointment> serveNextWalkIn(String vet, String room, LocalDateTime now) {
+        return run(() -> {
+            checkResources(vet, room);
+            WalkIn next = walkIns.peek();
+            if (next == null) {
+                return null;
+            }
+            Duration length = duration(next.service());
+            LocalDateTime start = earliestSlot(vet, room, now.truncatedTo(ChronoUnit.MINUTES), length);
+            Appointment appointment = add(next.animalId(), next.patient(), next.service(), vet, room, start);
+            walkIns.remove();
+            return appointment;
+        });
+    }
+
+    /**
+     * Provides the booked service to the patient, records the appointment as
+     * a visit and completes with the service's description from {@link
+     * Serviceable}, for the visit history. Completes with null, recording
+     * nothing, if the animal no longer exists, and fails with an
+     * IllegalStateException if the appointment was cancelled or already
+     * checked in.
+     */
+    public CompletableFuture<String> checkIn(Appointment appointment) {
+        return run(() -> {
+            if (byId.get(appointment.id()) != appointment) {
+                throw new IllegalStateException("The appointment has been cancelled");
+            }
+            if (checkedIn.contains(appointment.id())) {
+                throw new IllegalStateException(appointment.patient() + " is already checked in for this appointment");
+            }
+            Animal patient = patients.apply(appointment.animalId());
+            if (patient == null) {
+                return null;
+            }
+            write("CHECKIN," + appointment.id());
+            checkedIn.add(appointment.id());
+            return patient.provideService(appointment.service());
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            run(() -> {
+                if (out != null) {
+                    out.close();
+                    out = null;
+                }
+                return null;
+            }).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private <T> CompletableFuture<T> run(IoSupplier<T> task) {
+        return CompletableFuture.supplyAsync(unchecked(task), executor);
+    }
+
+    @FunctionalInterface
+    private interface IoSupplier<T> {
+        T get() throws IOException;
+    }
+
+    private static <T> Supplier<T> unchecked(IoSupplier<T> task) {
+        return () -> {
+            try {
+                return task.get();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    private Appointment add(long animalId, String patient, String service, String vet, String room,
+                            LocalDateTime start) throws IOException {
+        Duration length = duration(service);
+        Appointment appointment = new Appointment(nextId++, animalId, patient, service, vet, room, start,
+                start.plus(length));
+        write("BOOK," + appointment.id() + "," + animalId + "," + service + "," + vet + "," + room + ","
+                + toMinute(start) + "," + length.toMinutes());
+        put(appointment);
+        return appointment;
+    }
+
+    private void write(String record) throws IOException {
+        if (out != null) {
+            out.write(record);
+            out.write('\n');
+            out.flush();
+        }
+    }
+
+    private void put(Appointment appointment) {
+        vetCalendars.get(appointment.vet()).put(appointment);
+        roomCalendars.get(appointment.room()).put(appointment);
+        byId.put(appointment.id(), appointment);
+    }
+
+    private void remove(Appointment appointment) {
+        vetCalendars.get(appointment.vet()).remove(appointment);
+        roomCalendars.get(appointment.room()).remove(appointment);
+        byId.remove(appointment.id());
+        checkedIn.remove(appointment.id());
+    }
+
+    /** An appointment of the vet or in the room that overlaps [start, end), or null. */
+    private Appointment clash(String vet, String room, LocalDateTime start, LocalDateTime end) {
+        Appointment clash = vetCalendars.get(vet).overlapping(toMinute(start), toMinute(end));
+        return clash != null ? clash : roomCalendars.get(room).overlapping(toMinute(start), toMinute(end));
+    }
+
+    /**
+     * The earliest start from {@code from} when both calendars are free. Each
+     * calendar answers in O(log n); the loop only goes round again when the
+     * room is taken at the vet's first free time, and then starts from the
+     * room's first free time.
+     */
+    private LocalDateTime earliestSlot(String vet, String room, LocalDateTime from, Duration length) {
+        long started = System.nanoTime();
+        long minutes = length.toMinutes();
+        long candidate = toMinute(from.truncatedTo(ChronoUnit.MINUTES));
+        while (true) {
+            long vetFree = vetCalendars.get(vet).earliest(candidate, minutes);
+            long roomFree = roomCalendars.get(room).earliest(vetFree, minutes);
+            if (roomFree == vetFree) {
+                SLOT_TIME.since(started);
+                return fromMinute(vetFree);
+            }
+            candidate = roomFree;
+        }
+    }
+
+    private void checkResources(String vet, String room) {
+        if (!vetCalendars.containsKey(vet)) {
+            throw new IllegalArgumentException("Unknown vet: " + vet);
+        }
+        if (!roomCalendars.containsKey(room)) {
+            throw new IllegalArgumentException("Unknown room: " + room);
+        }
+    }
+
+    private static Duration duration(String service) {
+        Duration length = SERVICES.get(service);
+        if (length == null) {
+            throw new IllegalArgumentException("Unknown service: " + service);
+        }
+        return length;
+    }
+
+    private static String describeClash(Appointment clash, String vet) {
+        String taken = clash.vet().equals(vet) ? clash.vet() + " is" : clash.room() + " is";
+        return taken + " booked from " + clash.start().toLocalTime() + " to " + clash.end().toLocalTime()
+                + " (" + clash.service() + " for " + clash.patient() + ")";
+    }
+
+    private String patientName(long animalId) {
+        Animal animal = patients.apply(animalId);
+        return animal != null ? animal.getName() : "#" + animalId;
+    }
+
+    private static long toMinute(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) / 60;
+    }
+
+    private static LocalDateTime fromMinute(long minute) {
+        return LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC);
+    }
+
+    private static List<String> concat(List<String> first, List<String> second) {
+        List<String> all = new ArrayList<>(first);
+        all.addAll(second);
+        return all;
+    }
+
+    /**
+     * One vet's or room's appointments, with the free gaps between them. A
+     * gap is stored by start minute in {@code gaps}, and its start is also
+     * listed in {@code fitting} under every service length that fits in it
+     * within opening hours. The gap after the last appointment never ends,
+     * so every search finds a slot.
+     */
+    private static final class Calendar {
+        private static final long OPENS_MINUTE = OPENS.toSecondOfDay() / 60;
+        private static final long CLOSES_MINUTE = CLOSES.toSecondOfDay() / 60;
+        private static final long MINUTES_PER_DAY = 24 * 60;
+
+        final TreeMap<Long, Appointment> appointments = new TreeMap<>();
+        private final TreeMap<Long, Long> gaps = new TreeMap<>();
+        private final Map<Long, TreeSet<Long>> fitting = new HashMap<>();
+
+        Calendar() {
+            for (Duration length : SERVICES.values()) {
+                fitting.putIfAbsent(length.toMinutes(), new TreeSet<>());
+            }
+            addGap(0, Long.MAX_VALUE);
+        }
+
+        void put(Appointment appointment) {
+            long start = toMinute(appointment.start());
+            long end = toMinute(appointment.end());
+            appointments.put(start, appointment);
+            Map.Entry<Long, Long> gap = gaps.floorEntry(start);
+            removeGap(gap.getKey());
+            addGap(gap.getKey(), start);
+            addGap(end, gap.getValue());
+        }
+
+        void remove(Appointment appointment) {
+            long start = toMinute(appointment.start());
+            if (!appointments.remove(start, appointment)) {
+                return;
+            }
+            long from = start;
+            long to = toMinute(appointment.end());
+            Map.Entry<Long, Long> before = gaps.lowerEntry(start);
+            if (before != null && before.getValue() == start) {
+                from = before.getKey();
+                removeGap(from);
+            }
+            Long after = gaps.get(to);
+            if (after != null) {
+                removeGap(to);
+                to = after;
+            }
+            addGap(from, to);
+        }
+
+        Appointment overlapping(long start, long end) {
+            Map.Entry<Long, Appointment> before = appointments.floorEntry(start);
+            if (before != null && toMinute(before.getValue().end()) > start) {
+                return before.getValue();
+            }
+            Map.Entry<Long, Appointment> after = appointments.higherEntry(start);
+            if (after != null && after.getKey() < end) {
+                return after.getValue();
+            }
+            return null;
+        }
+
+        /** The first minute from {@code from} that starts {@code length} free minutes within opening hours. */
+        long earliest(long from, long length) {
+            Map.Entry<Long, Long> current = gaps.floorEntry(from);
+            if (current != null && from < current.getValue()) {
+                long start = fit(from, current.getValue(), length);
+                if (start >= 0) {
+                    return start;
+                }
+            }
+            long next = fitting.get(length).higher(from);
+            return fit(next, gaps.get(next), length);
+        }
+
+        private void addGap(long start, long end) {
+            if (start >= end) {
+                return;
+            }
+            gaps.put(start, end);
+            fitting.forEach((length, starts) -> {
+                if (fit(start, end, length) >= 0) {
+                    starts.add(start);
+                }
+            });
+        }
+
+        private void removeGap(long start) {
+            gaps.remove(start);
+            fitting.values().forEach(starts -> starts.remove(start));
+        }
+
+        /** The first minute in [start, end) that begins {@code length} minutes within one day's hours, or -1. */
+        private static long fit(long start, long end, long length) {
+            long minuteOfDay = Math.floorMod(start, MINUTES_PER_DAY);
+            long candidate = start;
+            if (minuteOfDay < OPENS_MINUTE) {
+                candidate += OPENS_MINUTE - minuteOfDay;
+            } else if (minuteOfDay + length > CLOSES_MINUTE) {
+                candidate += MINUTES_PER_DAY - minuteOfDay + OPENS_MINUTE;
+            }
+            return end - candidate >= length ? candidate : -1;
+        }
+    }
+
+    private static Map<String, Duration> servicesInOrder() {
+        Map<String, Duration> services = new LinkedHashMap<>();
+        services.put("Checkup", Duration.ofMinutes(30));
+        services.put("Vaccination", Duration.ofMinutes(15));
+        services.put("Grooming", Duration.ofMinutes(60));
+        services.put("Dental", Duration.ofMinutes(45));
+        services.put("Surgery", Duration.ofMinutes(120));
+        services.put("Emergency", Duration.ofMinutes(45));
+        return Collections.unmodifiableMap(services);
+    }
+}
@@ -0,0 +1,206 @@
+import java.util.*;
+
+/**
+ * Full-text index for the search boxes. Each item is indexed by a lower-case
+ * text made of its searchable fields. Query words of three or more characters
+ * match anywhere inside a word (found through trigram postings); shorter
+ * words match the start of a word (found through one- and two-character
+ * prefix postings). Candidates from the smallest posting list are verified
+ * against the stored text, so postings never need to be exact.
+ *
+ * <p>Not thread-safe: the application confines each index to one thread.
+ */
+public class SearchIndex<T> {
+    private static final int GRAM = 3;
+
+    private final Map<T, Integer> slots = new IdentityHashMap<>();
+    private final List<T> items = new ArrayList<>();
+    private final List<String> texts = new ArrayList<>();
+    private final Map<String, int[]> postings = new HashMap<>();
+    private final Map<String, Integer> postingSizes = new HashMap<>();
+    private int dead;
+
+    /** Adds the item, or re-indexes it if it is already present. */
+    public void put(T item, String text) {
+        remove(item);
+        int slot = items.size();
+        items.add(item);
+        String normalized = text.toLowerCase(Locale.ROOT);
+        texts.add(normalized);
+        slots.put(item, slot);
+
+        Set<String> keys = new HashSet<>();
+        for (String word : words(normalized)) {
+            keys.add(prefixKey(word.substring(0, 1)));
+            if (word.length() >= 2) {
+                keys.add(prefixKey(word.substring(0, 2)));
+            }
+            for (int i = 0; i + GRAM <= word.length(); i++) {
+                keys.add(word.substring(i, i + GRAM));
+            }
+        }
+        for (String key : keys) {
+            append(key, slot);
+        }
+    }
+
+    public void remove(T item) {
+        Integer slot = slots.remove(item);
+        if (slot != null) {
+            items.set(slot, null);
+            texts.set(slot, null);
+            if (++dead > 1024 && dead > slots.size()) {
+                compact();
+            }
+        }
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    /** Items matching every word of the query; an empty set for a blank query. */
+    public Set<T> search(String query) {
+        List<String> words = words(query.toLowerCase(Locale.ROOT));
+        Set<T> result = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (words.isEmpty()) {
+            return result;
+        }
+
+        String smallest = null;
+        int smallestSize = Integer.MAX_VALUE;
+        for (String word : words) {
+            for (String key : candidateKeys(word)) {
+                int size = postingSizes.getOrDefault(key, 0);
+                if (size < smallestSize) {
+                    smallest = key;
+                    smallestSize = size;
+                }
+            }
+        }
+        if (smallestSize == 0) {
+            return result;
+        }
+
+        int[] posting = postings.get(smallest);
+        for (int i = 0; i < smallestSize; i++) {
+            int slot = posting[i];
+            String text = texts.get(slot);
+            if (text != null && matches(text, words)) {
+                result.add(items.get(slot));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Narrows an earlier result to a longer query; only valid when
+     * {@link #narrows(String, String)} holds and the index has not changed.
+     */
+    public Set<T> refine(Set<T> previous, String query) {
+        List<String> words = words(query.toLowerCase(Locale.ROOT));
+        Set<T> result = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (T item : previous) {
+            Integer slot = slots.get(item);
+            if (slot != null && matches(texts.get(slot), words)) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    /** True when every match of {@code next} is also a match of {@code previous}. */
+    public static boolean narrows(String previous, String next) {
+        List<String> before = words(previous.toLowerCase(Locale.ROOT));
+        List<String> after = words(next.toLowerCase(Locale.ROOT));
+        if (before.isEmpty() || before.size() > after.size()) {
+            return false;
+        }
+        for (int i = 0; i < before.size(); i++) {
+            String old = before.get(i);
+            String now = after.get(i);
+            if (old.equals(now)) {
+                continue;
+            }
+            boolean sameKind = old.length() >= GRAM || now.length() < GRAM;
+            if (i != before.size() - 1 || !now.startsWith(old) || !sameKind) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> candidateKeys(String word) {
+        if (word.length() < GRAM) {
+            return List.of(prefixKey(word));
+        }
+        List<String> keys = new ArrayList<>(word.length() - GRAM + 1);
+        for (int i = 0; i + GRAM <= word.length(); i++) {
+            keys.add(word.substring(i, i + GRAM));
+        }
+        return keys;
+    }
+
+    private static boolean matches(String text, List<String> words) {
+        for (String word : words) {
+            if (word.length() >= GRAM) {
+                if (!text.contains(word)) {
+                    return false;
+                }
+            } else if (!text.startsWith(word) && !text.contains(" " + word)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean boundary = i == text.length() || Character.isWhitespace(text.charAt(i));
+            if (!boundary && start < 0) {
+                start = i;
+            } else if (boundary && start >= 0) {
+                words.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private static String prefixKey(String prefix) {
+        return "^" + prefix;
+    }
+
+    private void append(String key, int slot) {
+        int size = postingSizes.getOrDefault(key, 0);
+        int[] posting = postings.get(key);
+        if (posting == null) {
+            posting = new int[2];
+            postings.put(key, posting);
+        } else if (size == posting.length) {
+            posting = Arrays.copyOf(posting, size * 2);
+            postings.put(key, posting);
+        }
+        posting[size] = slot;
+        postingSizes.put(key, size + 1);
+    }
+
+    /** Rebuilds the postings without the slots of removed items. */
+    private void compact() {
+        Map<T, String> live = new LinkedHashMap<>();
+        for (int slot = 0; slot < items.size(); slot++) {
+            if (items.get(slot) != null) {
+                live.put(items.get(slot), texts.get(slot));
+            }
+        }
+        slots.clear();
+        items.clear();
+        texts.clear();
+        postings.clear();
+        postingSizes.clear();
+        dead = 0;
+        live.forEach(this::put);
+    }
+}
@@ -0,0 +1,4 @@
+public interface Serviceable {
+    /** Describes the service of the given type as given to this patient, for the visit history. */
+    String provideService(String type);
+}
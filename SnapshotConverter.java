@@ -0,0 +1,22 @@
+import java.io.IOException;
+
+/**
+ * Command line entry point for moving data between the text files and the
+ * binary snapshot. Either option reads the current snapshot, whichever
+ * format it is in. It is a separate class because the java launcher starts
+ * the FX toolkit for any main class that extends Application.
+ *
+ * <pre>
+ * java SnapshotConverter --import-text   # current snapshot -> data.bin
+ * java SnapshotConverter --export-text   # current snapshot -> owners/animals/relations.txt
+ * </pre>
+ */
+public class SnapshotConverter {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1 || !(args[0].equals("--import-text") || args[0].equals("--export-text"))) {
+            System.err.println("Usage: java SnapshotConverter --import-text | --export-text");
+            System.exit(2);
+        }
+        new JavaApplication().convertSnapshot(args[0].equals("--import-text"));
+    }
+}
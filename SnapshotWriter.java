@@ -0,0 +1,117 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Writes a set of data files as one generation. Every file is first written
+ * and fsynced under a ".tmp" name, then a commit marker listing the files is
+ * atomically put in place, and only then are the temp files renamed over the
+ * originals. A crash before the marker leaves the previous generation intact;
+ * a crash after it is rolled forward by {@link #recover(Collection)}.
+ */
+public class SnapshotWriter {
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String COMMIT_MARKER = "save.commit";
+    private static final Metrics.Timer WRITE_TIME = Metrics.timer("save.snapshotWrite");
+    private static final Metrics.Counter BYTES_WRITTEN = Metrics.counter("io.bytesWritten");
+
+    @FunctionalInterface
+    public interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface TextContent {
+        void writeTo(Writer out) throws IOException;
+    }
+
+    /** Adapts a character writer to a file content, encoded as UTF-8. */
+    public static Content text(TextContent content) {
+        return out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+            content.writeTo(writer);
+            writer.flush();
+        };
+    }
+
+    private final Path directory;
+
+    public SnapshotWriter(Path directory) {
+        this.directory = directory;
+    }
+
+    /** Replaces the named files with the given contents, all or nothing. */
+    public void write(Map<String, Content> files) throws IOException {
+        long started = System.nanoTime();
+        for (Map.Entry<String, Content> file : files.entrySet()) {
+            writeDurably(temp(file.getKey()), file.getValue());
+        }
+
+        Path marker = directory.resolve(COMMIT_MARKER);
+        Path markerTemp = temp(COMMIT_MARKER);
+        writeDurably(markerTemp, text(out -> {
+            for (String name : files.keySet()) {
+                out.write(name);
+                out.write('\n');
+            }
+        }));
+        Files.move(markerTemp, marker, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+
+        for (String name : files.keySet()) {
+            Files.move(temp(name), directory.resolve(name),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory();
+        Files.delete(marker);
+        WRITE_TIME.since(started);
+    }
+
+    /**
+     * Completes a generation whose commit marker was written before a crash,
+     * and discards temp files of one that never reached the marker.
+     */
+    public void recover(Collection<String> names) throws IOException {
+        Path marker = directory.resolve(COMMIT_MARKER);
+        if (Files.exists(marker)) {
+            for (String name : Files.readAllLines(marker, StandardCharsets.UTF_8)) {
+                if (!name.isEmpty() && Files.exists(temp(name))) {
+                    Files.move(temp(name), directory.resolve(name),
+                            StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            syncDirectory();
+            Files.delete(marker);
+        }
+        Files.deleteIfExists(temp(COMMIT_MARKER));
+        for (String name : names) {
+            Files.deleteIfExists(temp(name));
+        }
+    }
+
+    private Path temp(String name) {
+        return directory.resolve(name + TEMP_SUFFIX);
+    }
+
+    private static void writeDurably(Path path, Content content) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream out = Channels.newOutputStream(channel);
+            content.writeTo(out);
+            out.flush();
+            channel.force(true);
+            BYTES_WRITTEN.add(channel.size());
+        }
+    }
+
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not every platform lets a directory be opened for sync; the renames are still atomic.
+        }
+    }
+}
@@ -0,0 +1,29 @@
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Where owners, animals and the owner-pet relations are kept. The
+ * application loads once through {@link #load(List)} and then reports each
+ * edit as {@link ModelStore} commits it; the implementation decides how those
+ * edits become durable. Change methods may be called on any thread while the
+ * store holds its locks, so they must only buffer or queue the edit.
+ */
+interface VetRepository extends Closeable {
+    /** Reads everything stored, off the FX thread; problems collects skipped records. */
+    CompletableFuture<JavaApplication.LoadedData> load(List<String> problems);
+
+    void addOwner(Owner owner);
+
+    void addAnimal(Animal animal);
+
+    void assign(Owner owner, Animal animal);
+
+    void deleteAnimal(Animal animal);
+
+    /** Deletes the owner together with every pet it owns. */
+    void deleteOwner(Owner owner);
+
+    /** Completes once every change reported so far is durable. */
+    CompletableFuture<Void> flush();
+}
@@ -0,0 +1,351 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * Visit and treatment records per animal, kept for years without making
+ * startup or the tables any slower.
+ *
+ * <p>Records are appended to one segment per month, history/visits-YYYY-MM.dat,
+ * each record prefixed with its length so a torn last record is simply
+ * ignored. The current month is read into memory on first use. Older months
+ * are memory-mapped when queried, together with a visits-YYYY-MM.idx file
+ * holding (animal ID, offset) pairs sorted by animal. The index is built the
+ * first time a month is read and rebuilt if the segment has grown since, so
+ * finding one animal's records in a month is a binary search. The last few
+ * mapped months and the last few hundred per-animal results stay cached.
+ *
+ * <p>Opening only lists the directory. Like {@link Scheduler}, all state is
+ * confined to a single-threaded executor and every call returns a future.
+ */
+public class VisitHistory implements Closeable {
+    public static final String DIRECTORY = "history";
+    private static final String PREFIX = "visits-";
+    private static final int MAPPED_MONTHS = 12;
+    private static final int CACHED_RESULTS = 512;
+    private static final int ENTRY = 2 * Long.BYTES;
+    private static final Metrics.Timer QUERY_TIME = Metrics.timer("history.query");
+    private static final Metrics.Counter APPENDS = Metrics.counter("history.appends");
+
+    /** One record; {@code kind} is "Visit" or "Treatment". */
+    public record Visit(long animalId, LocalDateTime time, String kind, String description, String vet) {}
+
+    /** A mapped month: the records and the sorted index over them. */
+    private record Segment(ByteBuffer data, ByteBuffer index, int entries) {}
+
+    private final Path directory;
+    private final ExecutorService executor;
+    private final TreeSet<YearMonth> months = new TreeSet<>();
+    private YearMonth recentMonth;
+    private Map<Long, List<Visit>> recent;
+    private FileChannel recentOut;
+    private final Map<YearMonth, Segment> mapped = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<YearMonth, Segment> eldest) {
+            return size() > MAPPED_MONTHS;
+        }
+    };
+    private final Map<String, List<Visit>> results = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<Visit>> eldest) {
+            return size() > CACHED_RESULTS;
+        }
+    };
+
+    /** @param executor single-threaded; owns the history's state from now on */
+    public VisitHistory(Path parent, ExecutorService executor) {
+        this.directory = parent.resolve(DIRECTORY);
+        this.executor = executor;
+    }
+
+    /** Finds the monthly segments on disk; nothing is read yet. */
+    public CompletableFuture<Void> open() {
+        return run(() -> {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*.dat")) {
+                for (Path path : stream) {
+                    String name = path.getFileName().toString();
+                    try {
+                        months.add(YearMonth.parse(name.substring(PREFIX.length(), name.length() - 4)));
+                    } catch (RuntimeException e) {
+                        // not one of ours
+                    }
+                }
+            }
+            recentMonth = YearMonth.now();
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> record(Visit visit) {
+        return run(() -> {
+            YearMonth month = YearMonth.from(visit.time());
+            if (month.isAfter(recentMonth)) {
+                closeRecent();
+                recentMonth = month;
+            }
+            ByteBuffer encoded = encode(visit);
+            if (month.equals(recentMonth)) {
+                loadRecent();
+                writeFully(recentOut, encoded);
+                recentOut.force(false);
+                recent.computeIfAbsent(visit.animalId(), id -> new ArrayList<>()).add(visit);
+            } else {
+                try (FileChannel out = FileChannel.open(segmentFile(month, ".dat"), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    writeFully(out, encoded);
+                    out.force(false);
+                }
+                mapped.remove(month);
+                results.remove(month + ":" + visit.animalId());
+            }
+            months.add(month);
+            APPENDS.increment();
+            return null;
+        });
+    }
+
+    /** The animal's records from {@code from} (inclusive) to {@code to} (exclusive), oldest first. */
+    public CompletableFuture<List<Visit>> visits(long animalId, LocalDateTime from, LocalDateTime to) {
+        return run(() -> {
+            long started = System.nanoTime();
+            List<Visit> found = new ArrayList<>();
+            if (!months.isEmpty() && from.isBefore(to)) {
+                for (YearMonth month : months.subSet(YearMonth.from(from), true, YearMonth.from(to), true)) {
+                    for (Visit visit : inMonth(month, animalId)) {
+                        if (!visit.time().isBefore(from) && visit.time().isBefore(to)) {
+                            found.add(visit);
+                        }
+                    }
+                }
+            }
+            found.sort(Comparator.comparing(Visit::time));
+            QUERY_TIME.since(started);
+            return found;
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            run(() -> {
+                closeRecent();
+                return null;
+            }).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private List<Visit> inMonth(YearMonth month, long animalId) throws IOException {
+        if (month.equals(recentMonth)) {
+            loadRecent();
+            return recent.getOrDefault(animalId, List.of());
+        }
+        String key = month + ":" + animalId;
+        List<Visit> cached = results.get(key);
+        if (cached == null) {
+            cached = lookup(segment(month), animalId);
+            results.put(key, cached);
+        }
+        return cached;
+    }
+
+    private void loadRecent() throws IOException {
+        if (recent != null) {
+            return;
+        }
+        recent = new HashMap<>();
+        Path file = segmentFile(recentMonth, ".dat");
+        recentOut = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long size = recentOut.size();
+        if (size > 0) {
+            ByteBuffer data = recentOut.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            long valid = scan(data, (offset, visit) ->
+                    recent.computeIfAbsent(visit.animalId(), id -> new ArrayList<>()).add(visit));
+            if (valid < size) {
+                recentOut.truncate(valid);
+            }
+        }
+        recentOut.position(recentOut.size());
+    }
+
+    private void closeRecent() throws IOException {
+        if (recentOut != null) {
+            recentOut.close();
+            recentOut = null;
+        }
+        recent = null;
+    }
+
+    private Segment segment(YearMonth month) throws IOException {
+        Segment segment = mapped.get(month);
+        if (segment != null) {
+            return segment;
+        }
+        Path dataFile = segmentFile(month, ".dat");
+        Path indexFile = segmentFile(month, ".idx");
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer index = null;
+        if (Files.exists(indexFile)) {
+            try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+                index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (index.capacity() < Long.BYTES || index.getLong(0) != data.capacity()) {
+                index = null;
+            }
+        }
+        if (index == null) {
+            index = buildIndex(data, indexFile);
+        }
+        segment = new Segment(data, index, (index.capacity() - Long.BYTES) / ENTRY);
+        mapped.put(month, segment);
+        return segment;
+    }
+
+    /**
+     * Writes the sorted (animal ID, offset) pairs of the segment, headed by
+     * the segment length they cover, and returns them.
+     */
+    private ByteBuffer buildIndex(ByteBuffer data, Path indexFile) throws IOException {
+        List<long[]> entries = new ArrayList<>();
+        scan(data.duplicate(), (offset, visit) -> entries.add(new long[] {visit.animalId(), offset}));
+        entries.sort(Comparator.<long[]>comparingLong(entry -> entry[0]).thenComparingLong(entry -> entry[1]));
+        ByteBuffer index = ByteBuffer.allocate(Long.BYTES + entries.size() * ENTRY);
+        index.putLong(data.capacity());
+        for (long[] entry : entries) {
+            index.putLong(entry[0]).putLong(entry[1]);
+        }
+        index.flip();
+        Path temporary = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, index.duplicate());
+            out.force(false);
+        }
+        Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return index;
+    }
+
+    private static List<Visit> lookup(Segment segment, long animalId) throws IOException {
+        int low = 0;
+        int high = segment.entries();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (segment.index().getLong(Long.BYTES + middle * ENTRY) < animalId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        List<Visit> found = new ArrayList<>();
+        for (int i = low; i < segment.entries(); i++) {
+            int position = Long.BYTES + i * ENTRY;
+            if (segment.index().getLong(position) != animalId) {
+                break;
+            }
+            ByteBuffer record = segment.data().duplicate();
+            record.position((int) segment.index().getLong(position + Long.BYTES));
+            BinaryFormat.Reader in = new BinaryFormat.Reader(record);
+            in.readCount();
+            found.add(decode(in));
+        }
+        return List.copyOf(found);
+    }
+
+    @FunctionalInterface
+    private interface RecordHandler {
+        void accept(long offset, Visit visit);
+    }
+
+    /** Reads every complete record and returns the length of the valid prefix. */
+    private static long scan(ByteBuffer data, RecordHandler handler) throws IOException {
+        BinaryFormat.Reader in = new BinaryFormat.Reader(data);
+        int valid = 0;
+        while (data.hasRemaining()) {
+            int offset = data.position();
+            try {
+                int length = in.readCount();
+                if (length > data.remaining()) {
+                    break;
+                }
+                int end = data.position() + length;
+                handler.accept(offset, decode(in));
+                data.position(end);
+                valid = end;
+            } catch (EOFException e) {
+                break;
+            }
+        }
+        return valid;
+    }
+
+    private static ByteBuffer encode(Visit visit) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (BinaryFormat.Writer out = new BinaryFormat.Writer(body)) {
+            out.writeVarint(visit.animalId());
+            out.writeSignedVarint(visit.time().toEpochSecond(ZoneOffset.UTC));
+            out.writeString(visit.kind());
+            out.writeString(visit.description());
+            out.writeString(visit.vet());
+        }
+        ByteArrayOutputStream record = new ByteArrayOutputStream(body.size() + 5);
+        try (BinaryFormat.Writer out = new BinaryFormat.Writer(record)) {
+            out.writeVarint(body.size());
+        }
+        body.writeTo(record);
+        return ByteBuffer.wrap(record.toByteArray());
+    }
+
+    /** Decodes the record body at the reader's position, just after its length prefix. */
+    private static Visit decode(BinaryFormat.Reader in) throws IOException {
+        return new Visit(in.readVarint(), LocalDateTime.ofEpochSecond(in.readSignedVarint(), 0, ZoneOffset.UTC),
+                in.readString(), in.readString(), in.readString());
+    }
+
+    private Path segmentFile(YearMonth month, String suffix) {
+        return directory.resolve(PREFIX + month + suffix);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    private <T> CompletableFuture<T> run(IoSupplier<T> task) {
+        return CompletableFuture.supplyAsync(unchecked(task), executor);
+    }
+
+    @FunctionalInterface
+    private interface IoSupplier<T> {
+        T get() throws IOException;
+    }
+
+    private static <T> Supplier<T> unchecked(IoSupplier<T> task) {
+        return () -> {
+            try {
+                return task.get();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+}